@@ -20,12 +20,46 @@ import android.content.ContentValues
 import android.content.res.AssetFileDescriptor
 import android.database.Cursor
 import android.net.Uri
+import android.os.ParcelFileDescriptor
 import android.webkit.MimeTypeMap
 import com.example.android.people.data.Contact
+import kotlin.concurrent.thread
 
+/**
+ * Serves the images in the assets: the contact icons as `icon/<contact ID>` and the photos as
+ * `photo/<asset name>`. With `w` and `h` query parameters, as added by [thumbnailUri], a
+ * thumbnail at least as large is served instead of the full image.
+ */
 class AssetFileProvider : ContentProvider() {
 
+    companion object {
+        private const val AUTHORITY = "com.example.android.people"
+        private const val PARAM_WIDTH = "w"
+        private const val PARAM_HEIGHT = "h"
+
+        /**
+         * The URI of a thumbnail of the image at [uri] that covers [width] by [height] pixels. URIs
+         * that aren't served by this provider are returned as they are.
+         */
+        fun thumbnailUri(uri: Uri, width: Int, height: Int = width): Uri {
+            if (uri.authority != AUTHORITY) {
+                return uri
+            }
+            return uri.buildUpon()
+                .appendQueryParameter(PARAM_WIDTH, width.toString())
+                .appendQueryParameter(PARAM_HEIGHT, height.toString())
+                .build()
+        }
+    }
+
+    private lateinit var thumbnails: Thumbnails
+
     override fun onCreate(): Boolean {
+        thumbnails = Thumbnails(context!!)
+        // Make the thumbnails before they are needed.
+        thread(name = "Thumbnails", priority = Thread.MIN_PRIORITY) {
+            thumbnails.generateAll()
+        }
         return true
     }
 
@@ -42,18 +76,31 @@ class AssetFileProvider : ContentProvider() {
         return when (segments[0]) {
             "icon" -> {
                 val id = segments[1].toLong()
-                Contact.CONTACTS.find { it.id == id }?.let { contact ->
-                    context?.resources?.assets?.openFd(contact.icon)
-                }
+                Contact.CONTACTS_BY_ID[id]?.let { contact -> openImage(uri, contact.icon) }
             }
             "photo" -> {
                 val filename = segments[1]
-                context?.resources?.assets?.openFd(filename)
+                openImage(uri, filename)
             }
             else -> null
         }
     }
 
+    private fun openImage(uri: Uri, name: String): AssetFileDescriptor? {
+        val width = uri.getQueryParameter(PARAM_WIDTH)?.toIntOrNull()
+        val height = uri.getQueryParameter(PARAM_HEIGHT)?.toIntOrNull()
+        if (width != null || height != null) {
+            thumbnails.get(name, width ?: 0, height ?: 0)?.let { file ->
+                return AssetFileDescriptor(
+                    ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY),
+                    0,
+                    AssetFileDescriptor.UNKNOWN_LENGTH
+                )
+            }
+        }
+        return context?.resources?.assets?.openFd(name)
+    }
+
     override fun query(
         uri: Uri,
         projection: Array<out String>?,
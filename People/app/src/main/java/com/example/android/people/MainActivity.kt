@@ -80,9 +80,9 @@ class MainActivity : AppCompatActivity(R.layout.main_activity), NavigationContro
             Intent.ACTION_SEND -> {
                 val shortcutId = intent.getStringExtra(Intent.EXTRA_SHORTCUT_ID)
                 val text = intent.getStringExtra(Intent.EXTRA_TEXT)
-                val contact = Contact.CONTACTS.find { it.shortcutId == shortcutId }
-                if (contact != null) {
-                    openChat(contact.id, text)
+                val id = Contact.idOfShortcut(shortcutId)
+                if (id != null) {
+                    openChat(id, text)
                 }
             }
         }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Size
+import androidx.annotation.WorkerThread
+import java.io.File
+import kotlin.math.ceil
+import kotlin.math.roundToInt
+
+/**
+ * Scaled down copies of the image assets, saved in the cache directory.
+ *
+ * Thumbnails are made in a few fixed [SIZES] of their shorter side, so a small set of files serves
+ * any requested size: a request gets the smallest thumbnail that covers both its width and its
+ * height. All the thumbnails of an asset are made from a single decode, sampled down with
+ * `inSampleSize`. No thumbnail is made at the size of the asset or larger, as the asset itself
+ * serves those.
+ */
+internal class Thumbnails(private val context: Context) {
+
+    private val directory = File(context.cacheDir, "thumbnails")
+
+    // The width and height of the assets, by name.
+    private val bounds = HashMap<String, Size>()
+
+    /**
+     * The thumbnail of the asset [name] that covers [width] by [height], or null if the asset is
+     * needed at its own size or larger. The thumbnail is made if it's missing.
+     */
+    @WorkerThread
+    fun get(name: String, width: Int, height: Int): File? {
+        val bounds = boundsOf(name) ?: return null
+        val scale = maxOf(width.toFloat() / bounds.width, height.toFloat() / bounds.height)
+        val shortSide = minOf(bounds.width, bounds.height)
+        val size = SIZES.firstOrNull { it >= ceil(shortSide * scale) } ?: return null
+        if (size >= shortSide) {
+            return null
+        }
+        val file = file(name, size)
+        if (!file.exists()) {
+            generate(name, listOf(size))
+        }
+        return file.takeIf { it.exists() }
+    }
+
+    /**
+     * Make all the missing thumbnails of the image assets.
+     */
+    @WorkerThread
+    fun generateAll() {
+        val names = context.assets.list("")?.filter { it.endsWith(".jpg") } ?: return
+        for (name in names) {
+            generate(name, SIZES.toList())
+        }
+    }
+
+    @Synchronized
+    private fun boundsOf(name: String): Size? {
+        return bounds[name] ?: run {
+            val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+            context.assets.open(name).use { BitmapFactory.decodeStream(it, null, options) }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null
+            }
+            Size(options.outWidth, options.outHeight).also { bounds[name] = it }
+        }
+    }
+
+    @Synchronized
+    private fun generate(name: String, sizes: List<Int>) {
+        val bounds = boundsOf(name) ?: return
+        val shortSide = minOf(bounds.width, bounds.height)
+        val missing = sizes.filter { it < shortSide && !file(name, it).exists() }
+        if (missing.isEmpty()) {
+            return
+        }
+        val largest = missing.maxOrNull()!!
+        var sampleSize = 1
+        while (shortSide / (sampleSize * 2) >= largest) {
+            sampleSize *= 2
+        }
+        val options = BitmapFactory.Options().apply { inSampleSize = sampleSize }
+        val image = context.assets.open(name).use { BitmapFactory.decodeStream(it, null, options) }
+            ?: return
+        directory.mkdirs()
+        for (size in missing) {
+            val scale = size.toFloat() / minOf(image.width, image.height)
+            val thumbnail = if (scale < 1f) {
+                Bitmap.createScaledBitmap(
+                    image,
+                    (image.width * scale).roundToInt(),
+                    (image.height * scale).roundToInt(),
+                    true
+                )
+            } else {
+                image
+            }
+            val file = file(name, size)
+            val temporary = File(directory, file.name + ".tmp")
+            temporary.outputStream().use { thumbnail.compress(Bitmap.CompressFormat.JPEG, 90, it) }
+            temporary.renameTo(file)
+        }
+    }
+
+    private fun file(name: String, size: Int) = File(directory, "${size}_$name")
+
+    companion object {
+        /**
+         * The sizes of the thumbnails, as the length of their shorter side in pixels.
+         */
+        val SIZES = intArrayOf(96, 192, 384, 768)
+    }
+}
@@ -15,18 +15,46 @@
 
 package com.example.android.people.data
 
+import java.util.concurrent.CopyOnWriteArrayList
+
 typealias ChatThreadListener = (List<Message>) -> Unit
 
-class Chat(val contact: Contact) {
+/**
+ * A conversation with a [contact]. Messages can be added from any thread; the listeners are
+ * called on the thread that added the message.
+ *
+ * The chat starts with [history], the latest messages of an earlier conversation, if there is one.
+ * The messages are added to [index], if there is one, as they are added to the chat.
+ */
+class Chat(
+    val contact: Contact,
+    history: List<Message> = emptyList(),
+    private val index: MessageIndex? = null
+) {
+
+    private val listeners = CopyOnWriteArrayList<ChatThreadListener>()
 
-    private val listeners = mutableListOf<ChatThreadListener>()
+    private val log = if (history.isEmpty()) {
+        MessageLog().apply {
+            append(contact.buildReply().apply { text = "Send me a message" })
+            append(contact.buildReply().apply { text = "I will reply in 5 seconds" })
+        }
+    } else {
+        MessageLog(history.first().id).apply { history.forEach { restore(it) } }
+    }
+
+    init {
+        if (index != null) {
+            val lastId = index.lastId(contact.id)
+            log.snapshot().filter { it.id > lastId }.forEach { index.add(contact.id, it) }
+        }
+    }
 
-    private val _messages = mutableListOf(
-        Message(1L, contact.id, "Send me a message", null, null, System.currentTimeMillis()),
-        Message(2L, contact.id, "I will reply in 5 seconds", null, null, System.currentTimeMillis())
-    )
+    /**
+     * The messages of the chat so far, as a list that doesn't change when messages are added.
+     */
     val messages: List<Message>
-        get() = _messages
+        get() = log.snapshot()
 
     fun addListener(listener: ChatThreadListener) {
         listeners.add(listener)
@@ -37,8 +65,9 @@ class Chat(val contact: Contact) {
     }
 
     fun addMessage(builder: Message.Builder) {
-        builder.id = _messages.last().id + 1
-        _messages.add(builder.build())
-        listeners.forEach { listener -> listener(_messages) }
+        val message = log.append(builder)
+        index?.add(contact.id, message)
+        val messages = log.snapshot()
+        listeners.forEach { listener -> listener(messages) }
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.annotation.WorkerThread
+
+/**
+ * The notifications of the chats, as used by [DefaultChatRepository]. [NotificationHelper] posts
+ * them to the system.
+ */
+interface ChatNotifications {
+
+    fun setUpNotificationChannels()
+
+    @WorkerThread
+    fun showNotification(chat: Chat, fromUser: Boolean, update: Boolean = false)
+
+    fun updateNotification(chat: Chat, chatId: Long, prepopulatedMsgs: Boolean)
+
+    fun canBubble(contact: Contact): Boolean
+}
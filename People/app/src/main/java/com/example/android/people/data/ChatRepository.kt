@@ -17,16 +17,27 @@ package com.example.android.people.data
 
 import android.content.Context
 import android.net.Uri
+import android.os.SystemClock
 import androidx.annotation.MainThread
+import androidx.annotation.WorkerThread
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
+import androidx.lifecycle.map
+import androidx.lifecycle.switchMap
+import java.io.File
+import java.io.IOException
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
 
 interface ChatRepository {
     fun getContacts(): LiveData<List<Contact>>
     fun findContact(id: Long): LiveData<Contact?>
+    fun searchContacts(prefix: String): LiveData<List<Contact>>
+    fun searchMessages(query: String): LiveData<List<MessageRange>>
     fun findMessages(id: Long): LiveData<List<Message>>
+    fun findMessageDeltas(id: Long): LiveData<MessageDelta> = findMessages(id).toMessageDeltas()
+    fun findMessagePages(id: Long): LiveData<MessagePagingSource>
     fun sendMessage(id: Long, text: String, photoUri: Uri?, photoMimeType: String?)
     fun updateNotification(id: Long)
     fun activateChat(id: Long)
@@ -35,53 +46,253 @@ interface ChatRepository {
     fun canBubble(id: Long): Boolean
 }
 
+/**
+ * The chats of the contacts of [directory].
+ *
+ * The message stores are opened and the recent messages of every chat are restored on
+ * [storeExecutor], so creating the repository doesn't read any file. The chats are published once
+ * they are all restored: the messages and pages of a chat are only found then, and the messages
+ * sent before are added then.
+ *
+ * The [MessageIndex] is read from [indexFile] on [storeExecutor] as well, before the messages
+ * stored since it was written are indexed again. Searches wait for that, and the index is written
+ * back a while after new messages are added.
+ */
 class DefaultChatRepository internal constructor(
-    private val notificationHelper: NotificationHelper,
-    private val executor: Executor
+    private val directory: ContactDirectory,
+    private val notificationHelper: ChatNotifications,
+    private val executor: Executor,
+    private val replyScheduler: ReplyScheduler,
+    private val openStore: (Contact) -> MessageStore? = { null },
+    private val storeExecutor: Executor = executor,
+    private val indexFile: File? = null,
+    private val replyDelayMillis: Long = REPLY_DELAY_MILLIS,
+    notificationWindowMillis: Long = NotificationCoalescer.DEFAULT_WINDOW_MILLIS
 ) : ChatRepository {
 
     companion object {
         private var instance: DefaultChatRepository? = null
 
+        /**
+         * The number of stored messages that a chat starts with.
+         */
+        private const val RECENT_MESSAGES = 50
+
+        /**
+         * How long the animals take to reply.
+         */
+        private const val REPLY_DELAY_MILLIS = 5000L
+
+        /**
+         * The number of stored messages read at a time to index them.
+         */
+        private const val INDEX_BATCH = 1000
+
+        /**
+         * How long after a message is added the index is written, with the messages added
+         * meanwhile.
+         */
+        private const val INDEX_WRITE_DELAY_MILLIS = 30_000L
+
         fun getInstance(context: Context): DefaultChatRepository {
             return instance ?: synchronized(this) {
-                instance ?: DefaultChatRepository(
-                    NotificationHelper(context),
-                    Executors.newFixedThreadPool(4)
-                ).also {
+                instance ?: create(context).also {
                     instance = it
                 }
             }
         }
+
+        private fun create(context: Context): DefaultChatRepository {
+            val executor = Executors.newFixedThreadPool(4)
+            val directory = ContactDirectory()
+            val indexFile = File(context.filesDir, "messages.idx")
+            return DefaultChatRepository(
+                directory,
+                NotificationHelper(context, directory),
+                executor,
+                ReplyScheduler(SystemClock::uptimeMillis, executor).apply { start() },
+                { contact -> MessageStore(File(context.filesDir, "messages/${contact.id}")) },
+                Executors.newSingleThreadExecutor(),
+                indexFile
+            )
+        }
     }
 
+    @Volatile
     private var currentChat: Long = 0L
 
-    private val chats = Contact.CONTACTS.map { contact ->
-        contact.id to Chat(contact)
-    }.toMap()
+    private val notificationCoalescer = NotificationCoalescer(
+        replyScheduler,
+        notificationWindowMillis
+    ) { chat, update ->
+        // The chat may have been opened since the notification was requested.
+        if (chat.contact.id != currentChat) {
+            notificationHelper.showNotification(chat, false, update)
+        }
+    }
+
+    // The chats, their stores, and their paging sources, by contact ID, once they are restored.
+    @Volatile
+    private var chats: Map<Long, Chat>? = null
+    private var stores: Map<Long, MessageStore> = emptyMap()
+    private var pagingSources: Map<Long, MessagePagingSource> = emptyMap()
+
+    private val loadedChats = MutableLiveData<Map<Long, Chat>>()
+
+    // Read from the index file by load().
+    @Volatile
+    private var index = MessageIndex()
+
+    private val indexWriteScheduled = AtomicBoolean()
+
+    // What to do with the chats once they are restored, guarded by itself.
+    private val pendingActions = mutableListOf<(Map<Long, Chat>) -> Unit>()
 
     init {
         notificationHelper.setUpNotificationChannels()
+        storeExecutor.execute { load() }
+    }
+
+    @WorkerThread
+    private fun load() {
+        indexFile?.let { index = MessageIndex.read(it) }
+        stores = directory.contacts.mapNotNull { contact ->
+            openStore(contact)?.let { store -> contact.id to store }
+        }.toMap()
+        val loaded = directory.contacts.associate { contact -> contact.id to openChat(contact) }
+        // The paging sources read the first ID of the stores here, so that the main thread never
+        // waits for the lock of a store.
+        pagingSources = loaded.mapValues { (id, chat) -> ChatPagingSource(chat, stores[id]) }
+        val actions = synchronized(pendingActions) {
+            chats = loaded
+            pendingActions.toList().also { pendingActions.clear() }
+        }
+        loadedChats.postValue(loaded)
+        actions.forEach { action -> action(loaded) }
+        writeIndex()
+    }
+
+    /**
+     * Write the index in a while, with all the messages added until then.
+     */
+    private fun scheduleIndexWrite() {
+        if (indexFile == null || !indexWriteScheduled.compareAndSet(false, true)) {
+            return
+        }
+        replyScheduler.schedule(INDEX_WRITE_DELAY_MILLIS) {
+            storeExecutor.execute {
+                // The messages added while writing schedule another write.
+                indexWriteScheduled.set(false)
+                writeIndex()
+            }
+        }
+    }
+
+    @WorkerThread
+    private fun writeIndex() {
+        val file = indexFile ?: return
+        try {
+            index.write(file)
+        } catch (e: IOException) {
+            // The messages that are not in the file are indexed again on the next start.
+        }
+    }
+
+    /**
+     * Run [action] with the chats: right away if they are restored, or on the thread that restores
+     * them once they are.
+     */
+    private fun whenLoaded(action: (Map<Long, Chat>) -> Unit) {
+        val chats = chats ?: synchronized(pendingActions) {
+            chats ?: run {
+                pendingActions.add(action)
+                return
+            }
+        }
+        action(chats)
+    }
+
+    /**
+     * Run [action] with the chat [id], as [whenLoaded] does.
+     */
+    private fun withChat(id: Long, action: (Chat) -> Unit) {
+        whenLoaded { chats -> action(chats.getValue(id)) }
+    }
+
+    private fun openChat(contact: Contact): Chat {
+        val chat = openHistory(contact)
+        // Keep the contacts ordered by their last message for the shortcuts.
+        directory.markActive(contact.id, chat.messages.last().timestamp)
+        chat.addListener { messages ->
+            directory.markActive(contact.id, messages.last().timestamp)
+            scheduleIndexWrite()
+        }
+        return chat
+    }
+
+    private fun openHistory(contact: Contact): Chat {
+        val store = stores[contact.id] ?: return Chat(contact, index = index)
+        val lastId = store.lastId
+        // Index the messages stored since the index was written.
+        var fromId = maxOf(store.firstId, index.lastId(contact.id) + 1)
+        while (fromId <= lastId) {
+            val toId = minOf(fromId + INDEX_BATCH, lastId + 1)
+            store.read(fromId, toId).forEach { index.add(contact.id, it) }
+            fromId = toId
+        }
+        val chat = Chat(
+            contact,
+            store.read(maxOf(store.firstId, lastId + 1 - RECENT_MESSAGES), lastId + 1),
+            index
+        )
+        // Every list of messages ends with all the messages that are not stored yet.
+        chat.addListener { messages -> storeExecutor.execute { store.appendAll(messages) } }
+        storeExecutor.execute {
+            store.appendAll(chat.messages)
+            store.compact()
+        }
+        return chat
     }
 
     @MainThread
     override fun getContacts(): LiveData<List<Contact>> {
         return MutableLiveData<List<Contact>>().apply {
-            postValue(Contact.CONTACTS)
+            postValue(directory.contacts)
         }
     }
 
     @MainThread
     override fun findContact(id: Long): LiveData<Contact?> {
         return MutableLiveData<Contact>().apply {
-            postValue(Contact.CONTACTS.find { it.id == id })
+            postValue(directory[id])
+        }
+    }
+
+    @MainThread
+    override fun searchContacts(prefix: String): LiveData<List<Contact>> {
+        return MutableLiveData<List<Contact>>().apply {
+            postValue(directory.search(prefix))
         }
     }
 
+    @MainThread
+    override fun searchMessages(query: String): LiveData<List<MessageRange>> {
+        val result = MutableLiveData<List<MessageRange>>()
+        // The index is only complete once the chats are restored.
+        whenLoaded {
+            executor.execute {
+                result.postValue(index.search(query))
+            }
+        }
+        return result
+    }
+
     @MainThread
     override fun findMessages(id: Long): LiveData<List<Message>> {
-        val chat = chats.getValue(id)
+        return loadedChats.switchMap { chats -> findMessages(chats.getValue(id)) }
+    }
+
+    private fun findMessages(chat: Chat): LiveData<List<Message>> {
         return object : LiveData<List<Message>>() {
 
             private val listener = { messages: List<Message> ->
@@ -99,39 +310,56 @@ class DefaultChatRepository internal constructor(
         }
     }
 
+    @MainThread
+    override fun findMessagePages(id: Long): LiveData<MessagePagingSource> {
+        return loadedChats.map { pagingSources.getValue(id) }
+    }
+
     @MainThread
     override fun sendMessage(id: Long, text: String, photoUri: Uri?, photoMimeType: String?) {
-        val chat = chats.getValue(id)
+        // The time the message was sent, even if the chats are still being restored.
+        val timestamp = System.currentTimeMillis()
+        withChat(id) { chat -> sendMessage(chat, text, timestamp, photoUri, photoMimeType) }
+    }
+
+    private fun sendMessage(
+        chat: Chat,
+        text: String,
+        timestamp: Long,
+        photoUri: Uri?,
+        photoMimeType: String?
+    ) {
         chat.addMessage(Message.Builder().apply {
             sender = 0L // User
             this.text = text
-            timestamp = System.currentTimeMillis()
+            this.timestamp = timestamp
             this.photo = photoUri
             this.photoMimeType = photoMimeType
         })
-        executor.execute {
-            // The animal is typing...
-            Thread.sleep(5000L)
+        // The animal is typing...
+        replyScheduler.schedule(replyDelayMillis) {
             // Receive a reply.
             chat.addMessage(chat.contact.reply(text))
             // Show notification if the chat is not on the foreground.
             if (chat.contact.id != currentChat) {
-                notificationHelper.showNotification(chat, false)
+                notificationCoalescer.request(chat, false)
             }
         }
     }
 
     override fun updateNotification(id: Long) {
-        val chat = chats.getValue(id)
-        notificationHelper.showNotification(chat, false, true)
+        withChat(id) { chat -> notificationCoalescer.request(chat, true) }
     }
 
     override fun activateChat(id: Long) {
-        val chat = chats.getValue(id)
         currentChat = id
-        val isPrepopulatedMsgs =
-            chat.messages.size == 2 && chat.messages[0] != null && chat.messages[1] != null
-        notificationHelper.updateNotification(chat, id, isPrepopulatedMsgs)
+        // The chat on screen doesn't need the notification of the replies that came before.
+        notificationCoalescer.cancel(id)
+        withChat(id) { chat ->
+            val isPrepopulatedMsgs =
+                chat.messages.size == 2 && chat.messages[0] != null && chat.messages[1] != null
+            notificationHelper.updateNotification(chat, id, isPrepopulatedMsgs)
+        }
     }
 
     override fun deactivateChat(id: Long) {
@@ -141,14 +369,15 @@ class DefaultChatRepository internal constructor(
     }
 
     override fun showAsBubble(id: Long) {
-        val chat = chats.getValue(id)
-        executor.execute {
-            notificationHelper.showNotification(chat, true)
+        withChat(id) { chat ->
+            executor.execute {
+                notificationHelper.showNotification(chat, true)
+            }
         }
     }
 
     override fun canBubble(id: Long): Boolean {
-        val chat = chats.getValue(id)
-        return notificationHelper.canBubble(chat.contact)
+        val contact = directory[id] ?: return false
+        return notificationHelper.canBubble(contact)
     }
 }
@@ -42,11 +42,29 @@ abstract class Contact(
                 }
             }
         )
+
+        /**
+         * The [CONTACTS] by their ID.
+         */
+        val CONTACTS_BY_ID = CONTACTS.associateBy { it.id }
+
+        private const val SHORTCUT_ID_PREFIX = "contact_"
+
+        /**
+         * The ID of the contact with [shortcutId], or null if it is not the ID of a contact
+         * shortcut.
+         */
+        fun idOfShortcut(shortcutId: String?): Long? {
+            if (shortcutId == null || !shortcutId.startsWith(SHORTCUT_ID_PREFIX)) {
+                return null
+            }
+            return shortcutId.substring(SHORTCUT_ID_PREFIX.length).toLongOrNull()
+        }
     }
 
     val iconUri = "content://com.example.android.people/icon/$id".toUri()
 
-    val shortcutId = "contact_$id"
+    val shortcutId = "$SHORTCUT_ID_PREFIX$id"
 
     fun buildReply() = Message.Builder().apply {
         sender = this@Contact.id
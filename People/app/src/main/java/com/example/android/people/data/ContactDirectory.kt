@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.util.Locale
+import java.util.TreeSet
+
+/**
+ * All the [contacts], indexed for the lookups of the app.
+ *
+ * - A contact is found by ID in constant time.
+ * - Names are searched by prefix in a sorted array of the words of all the names, so a search
+ *   takes a binary search plus the number of matches.
+ * - The contacts are also ordered by the time of their last message, so that the most recent ones
+ *   can be picked for the shortcuts without sorting everyone.
+ *
+ * This is safe to use from any thread.
+ */
+class ContactDirectory(contacts: Collection<Contact> = Contact.CONTACTS) {
+
+    /**
+     * All the contacts, in the order they were given.
+     */
+    val contacts: List<Contact> = contacts.toList()
+
+    private val byId: Map<Long, Contact> = this.contacts.associateBy { it.id }
+
+    // Every word of every name, lowercase, and the index of its contact in [contacts].
+    private val words: Array<String>
+    private val wordContacts: IntArray
+
+    init {
+        val entries = this.contacts.flatMapIndexed { index, contact ->
+            contact.name.split(' ').filter { it.isNotEmpty() }.map { normalize(it) to index }
+        }.sortedBy { it.first }
+        words = Array(entries.size) { entries[it].first }
+        wordContacts = IntArray(entries.size) { entries[it].second }
+    }
+
+    // The time of the last message with each contact, and the contacts ordered by that time.
+    private val lastActive = HashMap<Long, Long>()
+    private val recent = TreeSet(
+        compareByDescending<Contact> { lastActive[it.id] }.thenBy { it.id }
+    )
+
+    /**
+     * The contact with [id], or null if there is none.
+     */
+    operator fun get(id: Long): Contact? = byId[id]
+
+    /**
+     * The contacts whose name has a word starting with [prefix], ignoring case, up to [limit] of
+     * them, in the order of [contacts].
+     */
+    fun search(prefix: String, limit: Int = Int.MAX_VALUE): List<Contact> {
+        val key = normalize(prefix.trim())
+        if (key.isEmpty()) {
+            return contacts.take(limit)
+        }
+        val matches = sortedSetOf<Int>()
+        var i = lowerBound(key)
+        while (i < words.size && words[i].startsWith(key)) {
+            matches.add(wordContacts[i])
+            i++
+        }
+        return matches.asSequence().take(limit).map { contacts[it] }.toList()
+    }
+
+    /**
+     * Records that there was a message with the contact with [id] at [timestamp]. Earlier times
+     * than the one already recorded are ignored.
+     */
+    @Synchronized
+    fun markActive(id: Long, timestamp: Long) {
+        val contact = byId[id] ?: return
+        val last = lastActive[id]
+        if (last != null && last >= timestamp) {
+            return
+        }
+        // Take it out before its key changes.
+        if (last != null) {
+            recent.remove(contact)
+        }
+        lastActive[id] = timestamp
+        recent.add(contact)
+    }
+
+    /**
+     * The [count] contacts with the most recent messages, most recent first, followed by the
+     * other contacts if there are not enough of them.
+     */
+    @Synchronized
+    fun mostRecent(count: Int): List<Contact> {
+        val result = recent.asSequence().take(count).toMutableList()
+        if (result.size < count) {
+            contacts.asSequence()
+                .filter { it.id !in lastActive }
+                .take(count - result.size)
+                .forEach { result.add(it) }
+        }
+        return result
+    }
+
+    private fun lowerBound(key: String): Int {
+        var low = 0
+        var high = words.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (words[mid] < key) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    private fun normalize(word: String) = word.lowercase(Locale.ROOT)
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.LruCache
+import androidx.annotation.WorkerThread
+import java.io.File
+import java.io.IOException
+import kotlin.math.roundToInt
+
+/**
+ * Contact icons, scaled down to the size of an adaptive icon.
+ *
+ * An icon asset larger than an icon is decoded once with an `inSampleSize` that keeps it just
+ * above the icon size, scaled down, and saved in the cache directory. Later on, the scaled icon is
+ * read from that file. Smaller assets are never scaled up nor saved again, as that would only
+ * make a larger file of a lower quality: they are decoded from the asset every time. The icons are also kept in memory,
+ * in a cache of at most [maxBytes].
+ */
+class ContactIcons(
+    private val context: Context,
+    maxBytes: Int = DEFAULT_MAX_BYTES
+) {
+
+    /**
+     * The size of the icons in pixels: 108dp, the full size of an adaptive icon. Icons made from
+     * smaller assets are smaller.
+     */
+    val size = (ADAPTIVE_ICON_SIZE_DP * context.resources.displayMetrics.density).roundToInt()
+
+    private val directory = File(context.cacheDir, "contact_icons")
+
+    private val icons = object : LruCache<Long, Bitmap>(maxBytes) {
+        override fun sizeOf(key: Long, value: Bitmap) = value.allocationByteCount
+    }
+
+    /**
+     * The icon of [contact].
+     */
+    @WorkerThread
+    operator fun get(contact: Contact): Bitmap {
+        icons[contact.id]?.let { return it }
+        val file = File(directory, "${contact.id}_$size.jpg")
+        val icon = BitmapFactory.decodeFile(file.path) ?: decodeAsset(contact, file)
+        icons.put(contact.id, icon)
+        return icon
+    }
+
+    /**
+     * Decode the icon of [contact] from its asset, and save it to [file] if it was scaled down.
+     */
+    private fun decodeAsset(contact: Contact, file: File): Bitmap {
+        val assets = context.resources.assets
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        assets.open(contact.icon).use { BitmapFactory.decodeStream(it, null, bounds) }
+        val options = BitmapFactory.Options().apply {
+            inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, size)
+        }
+        val sampled = assets.open(contact.icon).use { BitmapFactory.decodeStream(it, null, options) }
+            ?: throw IOException("Cannot decode ${contact.icon}")
+        // Crop the center square, as the launcher would, then scale it down to the icon size.
+        val side = minOf(sampled.width, sampled.height)
+        val square = Bitmap.createBitmap(
+            sampled, (sampled.width - side) / 2, (sampled.height - side) / 2, side, side
+        )
+        val iconSize = scaledSize(side, size)
+        if (iconSize == side && options.inSampleSize == 1) {
+            return square
+        }
+        return Bitmap.createScaledBitmap(square, iconSize, iconSize, true).also { write(it, file) }
+    }
+
+    private fun write(icon: Bitmap, file: File) {
+        try {
+            directory.mkdirs()
+            val temporary = File(directory, file.name + ".tmp")
+            temporary.outputStream().use { icon.compress(Bitmap.CompressFormat.JPEG, 95, it) }
+            temporary.renameTo(file)
+        } catch (e: IOException) {
+            // The icon is decoded from the asset again next time.
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 4 * 1024 * 1024
+
+        private const val ADAPTIVE_ICON_SIZE_DP = 108
+
+        /**
+         * The size of the icon made from a square of [side] pixels, at most [size]: icons are
+         * only scaled down.
+         */
+        internal fun scaledSize(side: Int, size: Int) = minOf(side, size)
+
+        /**
+         * The largest power of two that divides [width] and [height] without making the smaller
+         * of the two less than [size].
+         */
+        internal fun sampleSize(width: Int, height: Int, size: Int): Int {
+            var sampleSize = 1
+            while (minOf(width, height) / (sampleSize * 2) >= size) {
+                sampleSize *= 2
+            }
+            return sampleSize
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.lifecycle.LiveData
+import androidx.lifecycle.MediatorLiveData
+
+/**
+ * Messages added to a chat. Messages are only ever appended, so [messages] starts with the
+ * messages of the previous delta, and the messages from [start] are the new ones.
+ */
+data class MessageDelta(
+    val messages: List<Message>,
+    val start: Int
+) {
+
+    val count: Int
+        get() = messages.size - start
+}
+
+/**
+ * Turns the lists of messages of a chat into the [MessageDelta]s between them. The first delta
+ * has all the messages. Lists that are not longer than the last one are dropped: messages can be
+ * added from several threads, and a list can arrive after a newer one.
+ */
+fun LiveData<List<Message>>.toMessageDeltas(): LiveData<MessageDelta> {
+    val deltas = MediatorLiveData<MessageDelta>()
+    var size = 0
+    deltas.addSource(this) { messages ->
+        if (deltas.value == null || messages.size > size) {
+            deltas.value = MessageDelta(messages, size)
+            size = messages.size
+        }
+    }
+    return deltas
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.annotation.WorkerThread
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.BitSet
+import java.util.Locale
+import java.util.TreeMap
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Consecutive messages of the chat with [chatId], from [fromId] inclusive to [toId] exclusive, as
+ * loaded by [MessagePagingSource.load].
+ */
+data class MessageRange(val chatId: Long, val fromId: Long, val toId: Long)
+
+/**
+ * A full-text index of the messages of all the chats, kept up to date by [Chat.addMessage].
+ *
+ * Every indexed message gets a document number in the order it is added. The text of a message is
+ * split in lowercase words, and every word maps to its postings: the ascending document numbers
+ * of the messages that contain it, in an [IntArray]. A search intersects the postings of the words
+ * of the query, with the last word taken as a prefix so that results show up while typing.
+ *
+ * The index is written to a file with [write] and read back with [read], the postings as varint
+ * deltas between document numbers. Messages added after it was written are indexed again when the
+ * chats are opened; [lastId] tells which ones.
+ *
+ * This is safe to use from any thread. The documents and the postings are only ever appended to,
+ * so searches and writes only hold the lock to take a [Snapshot] of them, and [add] doesn't wait
+ * for them to end.
+ */
+class MessageIndex {
+
+    private val lock = ReentrantReadWriteLock()
+
+    // The chat, ID, and time of each document.
+    private var chatSlots = IntArray(INITIAL_CAPACITY)
+    private var messageIds = LongArray(INITIAL_CAPACITY)
+    private var timestamps = LongArray(INITIAL_CAPACITY)
+    private var documentCount = 0
+
+    // The IDs of the chats by slot, the slots by chat ID, and the last indexed message by slot.
+    private val chatIds = mutableListOf<Long>()
+    private val slots = HashMap<Long, Int>()
+    private var lastIds = LongArray(0)
+
+    private val terms = TreeMap<String, Postings>()
+
+    /**
+     * The number of indexed messages.
+     */
+    val size: Int
+        get() = lock.read { documentCount }
+
+    /**
+     * The ID of the last indexed message of the chat with [chatId], or 0 if there is none.
+     */
+    fun lastId(chatId: Long): Long = lock.read { slots[chatId]?.let { lastIds[it] } ?: 0L }
+
+    /**
+     * Indexes [message] of the chat with [chatId], which must not be indexed yet.
+     */
+    fun add(chatId: Long, message: Message) {
+        val tokens = tokenize(message.text)
+        lock.write {
+            val slot = slotOf(chatId)
+            lastIds[slot] = maxOf(lastIds[slot], message.id)
+            val document = addDocument(slot, message.id, message.timestamp)
+            for (token in tokens) {
+                terms.getOrPut(token) { Postings() }.add(document)
+            }
+        }
+    }
+
+    /**
+     * The messages that contain all the words of [query], the last one as a prefix unless the
+     * query ends with a space. The [limit] most recent messages are returned, as ranges of
+     * consecutive messages, the range with the most recent message first.
+     */
+    fun search(query: String, limit: Int = DEFAULT_LIMIT): List<MessageRange> {
+        val tokens = tokenize(query)
+        if (tokens.isEmpty()) {
+            return emptyList()
+        }
+        val prefix = query.last().isLetterOrDigit()
+        // The postings of every word are looked up with the lock, and intersected without it.
+        val (snapshot, postings) = lock.read {
+            snapshot() to tokens.mapIndexed { i, token ->
+                if (prefix && i == tokens.lastIndex) {
+                    terms.subMap(token, true, token + Char.MAX_VALUE, false).values
+                        .map { it.snapshot() }
+                } else {
+                    listOfNotNull(terms[token]?.snapshot())
+                }
+            }
+        }
+        var matches: BitSet? = null
+        for (wordPostings in postings) {
+            val documents = BitSet(snapshot.documentCount)
+            wordPostings.forEach { it.addTo(documents) }
+            matches = matches?.apply { and(documents) } ?: documents
+            if (matches.isEmpty) {
+                return emptyList()
+            }
+        }
+        return snapshot.toRanges(snapshot.mostRecent(matches!!, limit))
+    }
+
+    /**
+     * Writes the index to [file], replacing it. The messages added meanwhile are not written.
+     */
+    @WorkerThread
+    fun write(file: File) {
+        val (snapshot, postings) = lock.read {
+            snapshot() to terms.map { (term, postings) -> term to postings.snapshot() }
+        }
+        val temporary = File(file.parentFile, file.name + TEMPORARY_SUFFIX)
+        FileOutputStream(temporary).buffered().use { snapshot.write(it, postings) }
+        if (!temporary.renameTo(file)) {
+            throw IOException("Cannot rename $temporary")
+        }
+    }
+
+    /**
+     * The documents indexed so far. Must be called with the lock.
+     */
+    private fun snapshot() =
+        Snapshot(documentCount, chatSlots, messageIds, timestamps, chatIds.toList())
+
+    private fun slotOf(chatId: Long): Int {
+        return slots.getOrPut(chatId) {
+            chatIds.add(chatId)
+            lastIds = lastIds.copyOf(chatIds.size)
+            chatIds.size - 1
+        }
+    }
+
+    private fun addDocument(slot: Int, messageId: Long, timestamp: Long): Int {
+        if (documentCount == chatSlots.size) {
+            val capacity = documentCount * 2
+            chatSlots = chatSlots.copyOf(capacity)
+            messageIds = messageIds.copyOf(capacity)
+            timestamps = timestamps.copyOf(capacity)
+        }
+        chatSlots[documentCount] = slot
+        messageIds[documentCount] = messageId
+        timestamps[documentCount] = timestamp
+        return documentCount++
+    }
+
+    /**
+     * Reads the index written with [write]. Every count and document number is checked against
+     * the rest of [buffer] and what was read before it, so that a broken file fails with an
+     * [IOException] instead of allocating arrays of any size.
+     */
+    private fun readFrom(buffer: ByteBuffer) {
+        val chatCount = buffer.readCount(1)
+        repeat(chatCount) {
+            slotOf(buffer.readVarLong())
+        }
+        if (chatIds.size != chatCount) {
+            throw IOException("Duplicate chat IDs")
+        }
+        // A document has a slot, an ID, and a timestamp.
+        repeat(buffer.readCount(3)) {
+            val slot = buffer.readVarLong()
+            if (slot < 0 || slot >= chatCount) {
+                throw IOException("Invalid chat slot: $slot")
+            }
+            val messageId = buffer.readVarLong()
+            lastIds[slot.toInt()] = maxOf(lastIds[slot.toInt()], messageId)
+            addDocument(slot.toInt(), messageId, buffer.readVarLong())
+        }
+        // A term has a length and postings, which have a size.
+        repeat(buffer.readCount(2)) {
+            val term = ByteArray(buffer.readCount(1)).also { buffer.get(it) }
+            terms[String(term, Charsets.UTF_8)] = Postings.read(buffer, documentCount)
+        }
+    }
+
+    /**
+     * The documents of the index up to [documentCount], in arrays that may have more documents
+     * after that.
+     */
+    private class Snapshot(
+        val documentCount: Int,
+        private val chatSlots: IntArray,
+        private val messageIds: LongArray,
+        private val timestamps: LongArray,
+        private val chatIds: List<Long>
+    ) {
+
+        /**
+         * The [limit] most recent of [documents], in document order.
+         */
+        fun mostRecent(documents: BitSet, limit: Int): IntArray {
+            if (documents.cardinality() <= limit) {
+                return documents.stream().toArray()
+            }
+            // A heap of the most recent documents so far, with the oldest of them at the root. The
+            // documents are mostly added in time order, so going from the last one fills the heap
+            // with the most recent ones first and then the others are rarely more recent.
+            val heap = IntArray(limit)
+            var size = 0
+            var document = documents.previousSetBit(documentCount - 1)
+            while (document >= 0) {
+                if (size < limit) {
+                    heap[size] = document
+                    siftUp(heap, size++)
+                } else if (timestamps[document] > timestamps[heap[0]]) {
+                    heap[0] = document
+                    siftDown(heap, size)
+                }
+                document = documents.previousSetBit(document - 1)
+            }
+            return heap.apply { sort() }
+        }
+
+        private fun siftUp(heap: IntArray, index: Int) {
+            var child = index
+            while (child > 0) {
+                val parent = (child - 1) / 2
+                if (timestamps[heap[parent]] <= timestamps[heap[child]]) {
+                    return
+                }
+                heap[parent] = heap[child].also { heap[child] = heap[parent] }
+                child = parent
+            }
+        }
+
+        private fun siftDown(heap: IntArray, size: Int) {
+            var parent = 0
+            while (true) {
+                var smallest = parent
+                for (child in 2 * parent + 1..minOf(2 * parent + 2, size - 1)) {
+                    if (timestamps[heap[child]] < timestamps[heap[smallest]]) {
+                        smallest = child
+                    }
+                }
+                if (smallest == parent) {
+                    return
+                }
+                heap[parent] = heap[smallest].also { heap[smallest] = heap[parent] }
+                parent = smallest
+            }
+        }
+
+        fun toRanges(documents: IntArray): List<MessageRange> {
+            val sorted = documents.sortedWith(
+                compareBy<Int> { chatSlots[it] }.thenBy { messageIds[it] }
+            )
+            val ranges = mutableListOf<Pair<MessageRange, Long>>()
+            var i = 0
+            while (i < sorted.size) {
+                val slot = chatSlots[sorted[i]]
+                val fromId = messageIds[sorted[i]]
+                var toId = fromId + 1
+                var latest = timestamps[sorted[i]]
+                i++
+                while (i < sorted.size && chatSlots[sorted[i]] == slot &&
+                    messageIds[sorted[i]] == toId
+                ) {
+                    latest = maxOf(latest, timestamps[sorted[i]])
+                    toId++
+                    i++
+                }
+                ranges.add(MessageRange(chatIds[slot], fromId, toId) to latest)
+            }
+            return ranges.sortedByDescending { (_, latest) -> latest }.map { (range, _) -> range }
+        }
+
+        fun write(out: OutputStream, terms: List<Pair<String, Postings>>) {
+            out.writeVarLong(chatIds.size.toLong())
+            for (chatId in chatIds) {
+                out.writeVarLong(chatId)
+            }
+            out.writeVarLong(documentCount.toLong())
+            for (document in 0 until documentCount) {
+                out.writeVarLong(chatSlots[document].toLong())
+                out.writeVarLong(messageIds[document])
+                out.writeVarLong(timestamps[document])
+            }
+            out.writeVarLong(terms.size.toLong())
+            for ((term, postings) in terms) {
+                out.writeString(term)
+                postings.write(out)
+            }
+        }
+    }
+
+    /**
+     * The ascending document numbers of the messages with a term.
+     */
+    private class Postings(
+        private var documents: IntArray = IntArray(1),
+        private var size: Int = 0
+    ) {
+
+        fun add(document: Int) {
+            // A word can appear several times in a message.
+            if (size > 0 && documents[size - 1] == document) {
+                return
+            }
+            if (size == documents.size) {
+                documents = documents.copyOf(size * 2)
+            }
+            documents[size++] = document
+        }
+
+        /**
+         * The document numbers so far. They share the array of these postings, where the
+         * documents added later only go after them.
+         */
+        fun snapshot() = Postings(documents, size)
+
+        fun addTo(bits: BitSet) {
+            for (i in 0 until size) {
+                bits.set(documents[i])
+            }
+        }
+
+        fun write(out: OutputStream) {
+            out.writeVarLong(size.toLong())
+            var previous = 0
+            for (i in 0 until size) {
+                out.writeVarLong((documents[i] - previous).toLong())
+                previous = documents[i]
+            }
+        }
+
+        companion object {
+            /**
+             * Reads postings of documents before [documentCount].
+             */
+            fun read(buffer: ByteBuffer, documentCount: Int): Postings {
+                val size = buffer.readCount(1)
+                val documents = IntArray(maxOf(size, 1))
+                var previous = 0L
+                for (i in 0 until size) {
+                    val delta = buffer.readVarLong()
+                    // Only the first document can be 0 after the previous one.
+                    if (delta < 0 || delta == 0L && i > 0 || delta >= documentCount - previous) {
+                        throw IOException("Invalid document delta: $delta")
+                    }
+                    previous += delta
+                    documents[i] = previous.toInt()
+                }
+                return Postings(documents, size)
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_LIMIT = 100
+
+        private const val INITIAL_CAPACITY = 256
+        private const val TEMPORARY_SUFFIX = ".tmp"
+
+        /**
+         * Reads the index written to [file] with [write], or returns an empty index if there is
+         * none or it cannot be read, so that all the messages are indexed again.
+         */
+        @WorkerThread
+        fun read(file: File): MessageIndex {
+            if (!file.exists()) {
+                return MessageIndex()
+            }
+            return try {
+                val buffer = RandomAccessFile(file, "r").use {
+                    it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length())
+                }
+                MessageIndex().apply { readFrom(buffer) }
+            } catch (e: Exception) {
+                // Any broken file, whatever it makes fail.
+                MessageIndex()
+            } catch (e: OutOfMemoryError) {
+                MessageIndex()
+            }
+        }
+
+        /**
+         * Reads a count of items that take at least [minBytes] each, which must fit in the rest
+         * of the buffer.
+         */
+        private fun ByteBuffer.readCount(minBytes: Int): Int {
+            val count = readVarLong()
+            if (count < 0 || count > remaining() / minBytes) {
+                throw IOException("Invalid count: $count")
+            }
+            return count.toInt()
+        }
+
+        /**
+         * The lowercase words of [text]: runs of letters and digits.
+         */
+        internal fun tokenize(text: String): List<String> {
+            val tokens = mutableListOf<String>()
+            var start = -1
+            for (i in 0..text.length) {
+                val inWord = i < text.length && text[i].isLetterOrDigit()
+                if (inWord && start < 0) {
+                    start = i
+                } else if (!inWord && start >= 0) {
+                    tokens.add(text.substring(start, i).lowercase(Locale.ROOT))
+                    start = -1
+                }
+            }
+            return tokens
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Append-only list of messages that can be written from any thread without locking.
+ *
+ * An append reserves the next index with a single atomic increment, and the message ID is derived
+ * from that index, so IDs are unique and increase in the order of the log. Messages are stored in
+ * buckets that double in size and are never copied or changed once written, so a [snapshot] is
+ * just the number of published messages, read in place.
+ *
+ * A message is published when it and all the messages before it are written. Every appending
+ * thread moves the published count forward over the messages written by the others, so an append
+ * never waits for a slower one.
+ */
+internal class MessageLog(private val firstId: Long = 1L) {
+
+    private val reserved = AtomicInteger()
+    private val published = AtomicInteger()
+
+    private val buckets = AtomicReferenceArray<AtomicReferenceArray<Message>>(BUCKET_COUNT)
+
+    /**
+     * The number of published messages.
+     */
+    val size: Int
+        get() = published.get()
+
+    /**
+     * Give the next ID to the message built by [builder] and append it.
+     */
+    fun append(builder: Message.Builder): Message {
+        val index = reserve()
+        builder.id = firstId + index
+        return builder.build().also { write(index, it) }
+    }
+
+    /**
+     * Append a message that already has its ID, for example one read back from a [MessageStore].
+     * Restored messages must come before any new message.
+     */
+    fun restore(message: Message) {
+        val index = reserve()
+        check(message.id == firstId + index) { "Expected message ${firstId + index}: $message" }
+        write(index, message)
+    }
+
+    /**
+     * The messages published so far. The list never changes, even when messages are appended
+     * later on.
+     */
+    fun snapshot(): List<Message> = Snapshot(published.get())
+
+    private fun reserve(): Int {
+        val index = reserved.getAndIncrement()
+        check(index in 0..MAX_INDEX) { "The message log is full" }
+        return index
+    }
+
+    private fun write(index: Int, message: Message) {
+        val position = index + FIRST_BUCKET_SIZE
+        bucket(position).set(offset(position), message)
+        publish()
+    }
+
+    private fun publish() {
+        while (true) {
+            val count = published.get()
+            if (count >= reserved.get() || find(count) == null) {
+                return
+            }
+            published.compareAndSet(count, count + 1)
+        }
+    }
+
+    private fun find(index: Int): Message? {
+        val position = index + FIRST_BUCKET_SIZE
+        return buckets.get(bucketIndex(position))?.get(offset(position))
+    }
+
+    private fun bucket(position: Int): AtomicReferenceArray<Message> {
+        val index = bucketIndex(position)
+        buckets.get(index)?.let { return it }
+        buckets.compareAndSet(index, null, AtomicReferenceArray(FIRST_BUCKET_SIZE shl index))
+        return buckets.get(index)
+    }
+
+    private inner class Snapshot(override val size: Int) : AbstractList<Message>(), RandomAccess {
+
+        override fun get(index: Int): Message {
+            if (index < 0 || index >= size) {
+                throw IndexOutOfBoundsException("index: $index, size: $size")
+            }
+            return find(index)!!
+        }
+    }
+
+    private companion object {
+
+        const val FIRST_BUCKET_SHIFT = 3
+        const val FIRST_BUCKET_SIZE = 1 shl FIRST_BUCKET_SHIFT
+        const val BUCKET_COUNT = Int.SIZE_BITS - FIRST_BUCKET_SHIFT
+        const val MAX_INDEX = Int.MAX_VALUE - FIRST_BUCKET_SIZE
+
+        // Positions are offset by the size of the first bucket, so that the highest bit of a
+        // position tells its bucket.
+        fun bucketIndex(position: Int) =
+            Int.SIZE_BITS - 1 - Integer.numberOfLeadingZeros(position) - FIRST_BUCKET_SHIFT
+
+        fun offset(position: Int) = position - Integer.highestOneBit(position)
+    }
+}
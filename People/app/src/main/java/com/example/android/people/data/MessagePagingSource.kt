@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.annotation.WorkerThread
+
+/**
+ * Loads the messages of a chat by ranges of IDs, so that only the messages around the ones on
+ * screen need to be in memory. The IDs of the messages of a chat are consecutive.
+ */
+interface MessagePagingSource {
+
+    /**
+     * The ID of the oldest message of the chat.
+     */
+    val firstId: Long
+
+    /**
+     * The messages with IDs from [fromId] (inclusive) to [toId] (exclusive), or up to the last
+     * message of the chat.
+     */
+    @WorkerThread
+    fun load(fromId: Long, toId: Long): List<Message>
+}
+
+/**
+ * Pages through the messages of [chat], reading the ones that are older than the messages of the
+ * chat from [store].
+ *
+ * The first ID is read from [store] when the source is created, as reading it waits for any
+ * write to the store.
+ */
+internal class ChatPagingSource @WorkerThread constructor(
+    private val chat: Chat,
+    private val store: MessageStore?
+) : MessagePagingSource {
+
+    override val firstId: Long = minOf(store?.firstId ?: Long.MAX_VALUE, chat.messages.first().id)
+
+    override fun load(fromId: Long, toId: Long): List<Message> {
+        val messages = chat.messages
+        val recentId = messages.first().id
+        val end = minOf(toId, messages.last().id + 1)
+        val page = ArrayList<Message>(maxOf(0, (end - fromId).toInt()))
+        if (fromId < recentId && store != null) {
+            page.addAll(store.read(maxOf(fromId, store.firstId), minOf(end, recentId)))
+        }
+        for (id in maxOf(fromId, recentId) until end) {
+            page.add(messages[(id - recentId).toInt()])
+        }
+        return page
+    }
+}
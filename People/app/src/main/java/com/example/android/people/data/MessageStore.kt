@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import android.net.Uri
+import androidx.annotation.WorkerThread
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Durable, append-only storage for the messages of a chat.
+ *
+ * Messages are written to segment files named after the ID of their first message. A record is a
+ * varint length followed by the sender, the timestamp, the text, and the photo of the message;
+ * the ID isn't stored since the messages of a segment have consecutive IDs. Every segment has a
+ * sparse index file with the offset of one record out of [indexInterval], so a message is found by
+ * skipping at most [indexInterval] records of a memory-mapped segment.
+ *
+ * Only the index files are read when the store is opened, so it opens quickly whatever the
+ * number of stored messages, and messages are only read when asked for. The last segment is
+ * sealed when the store is opened, and new messages go to a new segment, so every process start
+ * leaves a segment behind; [compact] merges the small segments together.
+ *
+ * A write interrupted by the process being killed leaves a truncated record at the end of the
+ * last segment, which is dropped when the store is opened.
+ */
+@WorkerThread
+internal class MessageStore(
+    private val directory: File,
+    private val segmentSize: Int = DEFAULT_SEGMENT_SIZE,
+    private val indexInterval: Int = DEFAULT_INDEX_INTERVAL
+) : Closeable {
+
+    private val segments = mutableListOf<Segment>()
+
+    // the segment new messages are appended to, with its output
+    private var active: Segment? = null
+    private var output: OutputStream? = null
+
+    private val payload = ByteArrayOutputStream()
+    private val record = ByteArrayOutputStream()
+
+    init {
+        open()
+    }
+
+    /**
+     * The ID of the first stored message, or 1 if the store is empty.
+     */
+    val firstId: Long
+        @Synchronized get() = segments.firstOrNull()?.firstId ?: 1L
+
+    /**
+     * The ID of the last stored message, or 0 if the store is empty.
+     */
+    val lastId: Long
+        @Synchronized get() = segments.lastOrNull()?.let { it.firstId + it.count - 1 } ?: 0L
+
+    /**
+     * The number of segment files, which goes down when the store is compacted.
+     */
+    val segmentCount: Int
+        @Synchronized get() = segments.size
+
+    /**
+     * Store [message], which must follow the last stored message.
+     */
+    @Synchronized
+    fun append(message: Message) {
+        require(segments.isEmpty() || message.id == lastId + 1) {
+            "Expected message ${lastId + 1}, got ${message.id}"
+        }
+        val bytes = encode(message)
+        var segment = active
+        if (segment == null || segment.length + bytes.size > segmentSize) {
+            segment?.let { seal(it) }
+            segment = Segment(message.id)
+            segments.add(segment)
+            active = segment
+            output = BufferedOutputStream(FileOutputStream(segment.file, true))
+        }
+        output!!.write(bytes)
+        segment.addRecord(bytes.size)
+    }
+
+    /**
+     * Store the messages of [messages] that follow the last stored message and flush them.
+     * [messages] are consecutive messages of the chat, such as a snapshot of [Chat.messages].
+     */
+    @Synchronized
+    fun appendAll(messages: List<Message>) {
+        if (messages.isEmpty()) {
+            return
+        }
+        val start = if (segments.isEmpty()) 0 else lastId + 1 - messages.first().id
+        if (start < 0) {
+            throw IOException("Messages ${lastId + 1} to ${messages.first().id - 1} are missing")
+        }
+        for (index in start.toInt() until messages.size) {
+            append(messages[index])
+        }
+        output?.flush()
+    }
+
+    /**
+     * The stored message with the given [id].
+     */
+    operator fun get(id: Long): Message = read(id, id + 1).single()
+
+    /**
+     * The stored messages from [fromId] (inclusive) to [toId] (exclusive).
+     */
+    @Synchronized
+    fun read(fromId: Long, toId: Long): List<Message> {
+        if (fromId < firstId || toId > lastId + 1 || fromId > toId) {
+            throw IndexOutOfBoundsException("$fromId..$toId not in $firstId..${lastId + 1}")
+        }
+        output?.flush()
+        val messages = ArrayList<Message>((toId - fromId).toInt())
+        var segmentIndex = findSegment(fromId)
+        var id = fromId
+        while (id < toId) {
+            val segment = segments[segmentIndex++]
+            val buffer = segment.map()
+            buffer.position(segment.seek(buffer, (id - segment.firstId).toInt()))
+            val end = minOf(toId, segment.firstId + segment.count)
+            while (id < end) {
+                messages.add(decode(buffer, id++))
+            }
+        }
+        return messages
+    }
+
+    /**
+     * Merge the runs of consecutive sealed segments that fit together in a single segment.
+     */
+    @Synchronized
+    fun compact() {
+        var sealed = if (active == null) segments.size else segments.size - 1
+        var first = 0
+        while (first < sealed) {
+            var last = first
+            var length = segments[first].length
+            while (last + 1 < sealed && length + segments[last + 1].length <= segmentSize) {
+                last++
+                length += segments[last].length
+            }
+            if (last > first) {
+                merge(first, last)
+                sealed -= last - first
+            }
+            first++
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        active?.let { seal(it) }
+    }
+
+    private fun open() {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            throw IOException("Cannot create $directory")
+        }
+        // Left behind by a merge or an index write interrupted before its rename.
+        directory.listFiles { file -> file.name.endsWith(TEMPORARY_SUFFIX) }?.forEach { it.delete() }
+        val files = directory.listFiles { file -> file.name.endsWith(SEGMENT_SUFFIX) }
+            ?.mapNotNull { file ->
+                file.name.removeSuffix(SEGMENT_SUFFIX).toLongOrNull()?.let { it to file }
+            }
+            ?.sortedBy { (firstId, _) -> firstId }
+            ?: emptyList()
+        var nextId = -1L
+        for ((firstId, file) in files) {
+            if (nextId >= 0 && firstId < nextId) {
+                // Already merged into the previous segment by an interrupted compaction.
+                delete(file)
+                continue
+            }
+            if (nextId >= 0 && firstId > nextId) {
+                throw IOException("Messages $nextId to ${firstId - 1} are missing in $directory")
+            }
+            val segment = Segment(firstId)
+            if (!segment.readIndex()) {
+                segment.scan()
+                segment.writeIndex()
+            }
+            if (segment.count == 0) {
+                delete(file)
+                continue
+            }
+            segments.add(segment)
+            nextId = firstId + segment.count
+        }
+    }
+
+    private fun seal(segment: Segment) {
+        output?.close()
+        output = null
+        active = null
+        segment.writeIndex()
+    }
+
+    private fun merge(first: Int, last: Int) {
+        val merged = segments[first]
+        val temporary = File(directory, merged.file.name + TEMPORARY_SUFFIX)
+        FileOutputStream(temporary).use { out ->
+            for (index in first..last) {
+                segments[index].file.inputStream().use { it.copyTo(out) }
+            }
+            out.fd.sync()
+        }
+        val segment = Segment(merged.firstId)
+        segment.scan(temporary)
+        // The index doesn't match the old segment file, which is scanned again if the process is
+        // killed before the rename.
+        segment.writeIndex()
+        if (!temporary.renameTo(segment.file)) {
+            throw IOException("Cannot rename $temporary")
+        }
+        for (index in first + 1..last) {
+            delete(segments[index].file)
+        }
+        segments.subList(first, last + 1).clear()
+        segments.add(first, segment)
+    }
+
+    private fun delete(segmentFile: File) {
+        indexFile(segmentFile).delete()
+        segmentFile.delete()
+    }
+
+    private fun findSegment(id: Long): Int {
+        var low = 0
+        var high = segments.size - 1
+        while (low < high) {
+            val middle = (low + high + 1) ushr 1
+            if (segments[middle].firstId <= id) low = middle else high = middle - 1
+        }
+        return low
+    }
+
+    private fun encode(message: Message): ByteArray {
+        payload.reset()
+        payload.writeVarLong(message.sender)
+        payload.writeVarLong(message.timestamp)
+        payload.writeString(message.text)
+        payload.writeNullableString(message.photoUri?.toString())
+        payload.writeNullableString(message.photoMimeType)
+        record.reset()
+        record.writeVarLong(payload.size().toLong())
+        payload.writeTo(record)
+        return record.toByteArray()
+    }
+
+    private fun decode(buffer: ByteBuffer, id: Long): Message {
+        buffer.readVarLong()
+        val sender = buffer.readVarLong()
+        val timestamp = buffer.readVarLong()
+        val text = buffer.readString()
+        val photo = buffer.readNullableString()
+        val photoMimeType = buffer.readNullableString()
+        return Message(id, sender, text, photo?.let { Uri.parse(it) }, photoMimeType, timestamp)
+    }
+
+    private inner class Segment(val firstId: Long) {
+
+        val file = File(directory, "$firstId$SEGMENT_SUFFIX")
+
+        var count = 0
+        var length = 0L
+
+        // offset of every indexInterval-th record
+        private var offsets = IntArray(16)
+
+        private var mapped: MappedByteBuffer? = null
+
+        fun addRecord(recordLength: Int) {
+            if (count % indexInterval == 0) {
+                val slot = count / indexInterval
+                if (slot == offsets.size) {
+                    offsets = offsets.copyOf(slot * 2)
+                }
+                offsets[slot] = length.toInt()
+            }
+            count++
+            length += recordLength
+        }
+
+        /**
+         * The segment mapped in memory, up to its current length.
+         */
+        fun map(): ByteBuffer {
+            var buffer = mapped
+            if (buffer == null || buffer.capacity() < length) {
+                buffer = RandomAccessFile(file, "r").use {
+                    it.channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                }
+                mapped = buffer
+            }
+            return buffer!!.duplicate()
+        }
+
+        /**
+         * The offset of the record at [ordinal] in the segment.
+         */
+        fun seek(buffer: ByteBuffer, ordinal: Int): Int {
+            buffer.position(offsets[ordinal / indexInterval])
+            repeat(ordinal % indexInterval) {
+                val recordLength = buffer.readVarLong().toInt()
+                buffer.position(buffer.position() + recordLength)
+            }
+            return buffer.position()
+        }
+
+        /**
+         * Read the records of [source] to rebuild the index, and drop a truncated last record.
+         */
+        fun scan(source: File = file) {
+            val fileLength = source.length()
+            val buffer = RandomAccessFile(source, "r").use {
+                it.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength)
+            }
+            while (buffer.hasRemaining()) {
+                val start = buffer.position()
+                val recordLength = try {
+                    buffer.readVarLong()
+                } catch (e: BufferUnderflowException) {
+                    break
+                }
+                val end = buffer.position() + recordLength
+                if (recordLength <= 0 || end > fileLength) {
+                    buffer.position(start)
+                    break
+                }
+                buffer.position(end.toInt())
+                addRecord(end.toInt() - start)
+            }
+            if (length < fileLength) {
+                RandomAccessFile(source, "rw").use { it.setLength(length) }
+            }
+        }
+
+        /**
+         * Read the index file, if it was written for the current segment file.
+         */
+        fun readIndex(): Boolean {
+            val index = indexFile(file)
+            if (!index.exists()) {
+                return false
+            }
+            try {
+                DataInputStream(index.inputStream().buffered()).use { input ->
+                    if (input.readLong() != file.length()) {
+                        return false
+                    }
+                    val indexCount = input.readInt()
+                    val slots = IntArray(input.readInt()) { input.readInt() }
+                    count = indexCount
+                    length = file.length()
+                    offsets = if (slots.isEmpty()) IntArray(1) else slots
+                }
+            } catch (e: IOException) {
+                // The segment is scanned instead.
+                return false
+            }
+            return true
+        }
+
+        fun writeIndex() {
+            val index = indexFile(file)
+            val temporary = File(directory, index.name + TEMPORARY_SUFFIX)
+            val slots = (count + indexInterval - 1) / indexInterval
+            DataOutputStream(FileOutputStream(temporary).buffered()).use { out ->
+                out.writeLong(length)
+                out.writeInt(count)
+                out.writeInt(slots)
+                for (slot in 0 until slots) {
+                    out.writeInt(offsets[slot])
+                }
+            }
+            if (!temporary.renameTo(index)) {
+                throw IOException("Cannot rename $temporary")
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024
+        const val DEFAULT_INDEX_INTERVAL = 64
+
+        private const val SEGMENT_SUFFIX = ".seg"
+        private const val INDEX_SUFFIX = ".idx"
+        private const val TEMPORARY_SUFFIX = ".tmp"
+
+        private fun indexFile(segmentFile: File) =
+            File(segmentFile.parentFile, segmentFile.name.removeSuffix(SEGMENT_SUFFIX) + INDEX_SUFFIX)
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Merges the notification updates of a chat that are requested within [windowMillis] of each
+ * other into a single notification.
+ *
+ * The first request for a chat schedules a post on [scheduler] after [windowMillis], and the
+ * requests that follow before then are merged into it. [post] builds the notification when it
+ * runs, so it shows the latest messages of the chat. The merged notification only alerts if one of
+ * the requests would have.
+ */
+class NotificationCoalescer(
+    private val scheduler: ReplyScheduler,
+    private val windowMillis: Long = DEFAULT_WINDOW_MILLIS,
+    private val post: (chat: Chat, update: Boolean) -> Unit
+) {
+
+    // Whether the pending notification of a chat is only an update, by chat ID.
+    private val pending = ConcurrentHashMap<Long, Boolean>()
+
+    private val requested = AtomicInteger()
+    private val posted = AtomicInteger()
+
+    /**
+     * The number of notifications requested with [request].
+     */
+    val requestedCount: Int
+        get() = requested.get()
+
+    /**
+     * The number of notifications actually posted.
+     */
+    val postedCount: Int
+        get() = posted.get()
+
+    /**
+     * Show the notification of [chat] at the end of the window. [update] is true if the
+     * notification shouldn't alert again.
+     */
+    fun request(chat: Chat, update: Boolean) {
+        requested.incrementAndGet()
+        val id = chat.contact.id
+        var first = false
+        pending.compute(id) { _, pendingUpdate ->
+            first = pendingUpdate == null
+            (pendingUpdate ?: true) && update
+        }
+        if (first) {
+            scheduler.schedule(windowMillis) {
+                val merged = pending.remove(id)
+                if (merged != null) {
+                    posted.incrementAndGet()
+                    post(chat, merged)
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the pending notification of the chat with [id], if there is one, such as when the chat
+     * is opened before the end of the window.
+     */
+    fun cancel(id: Long) {
+        pending.remove(id)
+    }
+
+    companion object {
+        const val DEFAULT_WINDOW_MILLIS = 500L
+    }
+}
@@ -22,7 +22,6 @@ import android.app.PendingIntent
 import android.content.ComponentName
 import android.content.Context
 import android.content.Intent
-import android.graphics.BitmapFactory
 import android.net.Uri
 import android.os.Build
 import androidx.annotation.WorkerThread
@@ -35,6 +34,7 @@ import androidx.core.content.pm.ShortcutInfoCompat
 import androidx.core.content.pm.ShortcutManagerCompat
 import androidx.core.graphics.drawable.IconCompat
 import androidx.core.net.toUri
+import com.example.android.people.AssetFileProvider
 import com.example.android.people.BubbleActivity
 import com.example.android.people.MainActivity
 import com.example.android.people.R
@@ -43,7 +43,10 @@ import com.example.android.people.ReplyReceiver
 /**
  * Handles all operations related to [Notification].
  */
-class NotificationHelper(private val context: Context) {
+class NotificationHelper(
+    private val context: Context,
+    private val directory: ContactDirectory = ContactDirectory()
+) : ChatNotifications {
 
     companion object {
         /**
@@ -51,6 +54,11 @@ class NotificationHelper(private val context: Context) {
          */
         private const val CHANNEL_NEW_MESSAGES = "new_messages"
 
+        /**
+         * The size of the photos in the notifications, in pixels.
+         */
+        private const val NOTIFICATION_PHOTO_SIZE = 768
+
         private const val REQUEST_CONTENT = 1
         private const val REQUEST_BUBBLE = 2
     }
@@ -58,7 +66,12 @@ class NotificationHelper(private val context: Context) {
     private val notificationManager: NotificationManager =
         context.getSystemService() ?: throw IllegalStateException()
 
-    fun setUpNotificationChannels() {
+    private val contactIcons = ContactIcons(context)
+
+    // The IDs of the dynamic shortcuts that are published, the most recently pushed last.
+    private val publishedShortcuts = LinkedHashSet<String>()
+
+    override fun setUpNotificationChannels() {
         if (notificationManager.getNotificationChannel(CHANNEL_NEW_MESSAGES) == null) {
             notificationManager.createNotificationChannel(
                 NotificationChannel(
@@ -74,54 +87,73 @@ class NotificationHelper(private val context: Context) {
         updateShortcuts(null)
     }
 
+    /**
+     * Publishes the shortcuts of the contacts with the most recent messages, and moves the one of
+     * [importantContact] to the front.
+     *
+     * The shortcuts that are already published in the order of the contacts, from the least
+     * recent, are kept. Every shortcut after the first one out of order is built and pushed again,
+     * so that it moves ahead of the kept ones. The system drops the least recently pushed
+     * shortcuts when there are too many, as [publishedShortcuts] does.
+     */
     @WorkerThread
+    @Synchronized
     fun updateShortcuts(importantContact: Contact?) {
-        var shortcuts = Contact.CONTACTS.map { contact ->
-            val icon = IconCompat.createWithAdaptiveBitmap(
-                context.resources.assets.open(contact.icon).use { input ->
-                    BitmapFactory.decodeStream(input)
-                }
-            )
-            // Create a dynamic shortcut for each of the contacts.
-            // The same shortcut ID will be used when we show a bubble notification.
-            ShortcutInfoCompat.Builder(context, contact.shortcutId)
-                .setLocusId(LocusIdCompat(contact.shortcutId))
-                .setActivity(ComponentName(context, MainActivity::class.java))
-                .setShortLabel(contact.name)
-                .setIcon(icon)
-                .setLongLived(true)
-                .setCategories(setOf("com.example.android.bubbles.category.TEXT_SHARE_TARGET"))
-                .setIntent(
-                    Intent(context, MainActivity::class.java)
-                        .setAction(Intent.ACTION_VIEW)
-                        .setData(
-                            Uri.parse(
-                                "https://android.example.com/chat/${contact.id}"
-                            )
-                        )
-                )
-                .setPerson(
-                    Person.Builder()
-                        .setName(contact.name)
-                        .setIcon(icon)
-                        .build()
-                )
-                .build()
+        val maxCount = ShortcutManagerCompat.getMaxShortcutCountPerActivity(context)
+        val published = publishedShortcuts.toList().iterator()
+        var inOrder = true
+        for (contact in directory.mostRecent(maxCount).asReversed()) {
+            if (contact == importantContact) {
+                continue
+            }
+            // Look for the shortcut after the ones kept so far.
+            inOrder = inOrder && published.asSequence().any { it == contact.shortcutId }
+            if (!inOrder) {
+                pushShortcut(contact, maxCount)
+            }
         }
-        // Move the important contact to the front of the shortcut list.
         if (importantContact != null) {
-            shortcuts = shortcuts.sortedByDescending { it.id == importantContact.shortcutId }
-        }
-        // Truncate the list if we can't show all of our contacts.
-        val maxCount = ShortcutManagerCompat.getMaxShortcutCountPerActivity(context)
-        if (shortcuts.size > maxCount) {
-            shortcuts = shortcuts.take(maxCount)
+            pushShortcut(importantContact, maxCount)
         }
-        for (shortcut in shortcuts) {
-            ShortcutManagerCompat.pushDynamicShortcut(context, shortcut)
+    }
+
+    private fun pushShortcut(contact: Contact, maxCount: Int) {
+        ShortcutManagerCompat.pushDynamicShortcut(context, buildShortcut(contact))
+        publishedShortcuts.remove(contact.shortcutId)
+        publishedShortcuts.add(contact.shortcutId)
+        if (publishedShortcuts.size > maxCount) {
+            publishedShortcuts.remove(publishedShortcuts.first())
         }
     }
 
+    private fun buildShortcut(contact: Contact): ShortcutInfoCompat {
+        val icon = IconCompat.createWithAdaptiveBitmap(contactIcons[contact])
+        // The same shortcut ID will be used when we show a bubble notification.
+        return ShortcutInfoCompat.Builder(context, contact.shortcutId)
+            .setLocusId(LocusIdCompat(contact.shortcutId))
+            .setActivity(ComponentName(context, MainActivity::class.java))
+            .setShortLabel(contact.name)
+            .setIcon(icon)
+            .setLongLived(true)
+            .setCategories(setOf("com.example.android.bubbles.category.TEXT_SHARE_TARGET"))
+            .setIntent(
+                Intent(context, MainActivity::class.java)
+                    .setAction(Intent.ACTION_VIEW)
+                    .setData(
+                        Uri.parse(
+                            "https://android.example.com/chat/${contact.id}"
+                        )
+                    )
+            )
+            .setPerson(
+                Person.Builder()
+                    .setName(contact.name)
+                    .setIcon(icon)
+                    .build()
+            )
+            .build()
+    }
+
     private fun flagUpdateCurrent(mutable: Boolean): Int {
         return if (mutable) {
             if (Build.VERSION.SDK_INT >= 31) {
@@ -135,9 +167,11 @@ class NotificationHelper(private val context: Context) {
     }
 
     @WorkerThread
-    fun showNotification(chat: Chat, fromUser: Boolean, update: Boolean = false) {
+    override fun showNotification(chat: Chat, fromUser: Boolean, update: Boolean) {
         updateShortcuts(chat.contact)
-        val icon = IconCompat.createWithAdaptiveBitmapContentUri(chat.contact.iconUri)
+        val icon = IconCompat.createWithAdaptiveBitmapContentUri(
+            AssetFileProvider.thumbnailUri(chat.contact.iconUri, contactIcons.size)
+        )
         val user = Person.Builder().setName(context.getString(R.string.sender_you)).build()
         val person = Person.Builder().setName(chat.contact.name).setIcon(icon).build()
         val contentUri = "https://android.example.com/chat/${chat.contact.id}".toUri()
@@ -154,15 +188,19 @@ class NotificationHelper(private val context: Context) {
         // Let's add some more content to the notification in case it falls back to a normal
         // notification.
         val messagingStyle = NotificationCompat.MessagingStyle(user)
-        val lastId = chat.messages.last().id
-        for (message in chat.messages) {
+        val messages = chat.messages
+        val lastId = messages.last().id
+        for (message in messages) {
             val m = NotificationCompat.MessagingStyle.Message(
                 message.text,
                 message.timestamp,
                 if (message.isIncoming) person else null
             ).apply {
                 if (message.photoUri != null) {
-                    setData(message.photoMimeType, message.photoUri)
+                    setData(
+                        message.photoMimeType,
+                        AssetFileProvider.thumbnailUri(message.photoUri, NOTIFICATION_PHOTO_SIZE)
+                    )
                 }
             }
             if (message.id < lastId) {
@@ -239,7 +277,7 @@ class NotificationHelper(private val context: Context) {
             // Let's add some more content to the notification in case it falls back to a normal
             // notification.
             .setStyle(messagingStyle)
-            .setWhen(chat.messages.last().timestamp)
+            .setWhen(messages.last().timestamp)
         // Don't sound/vibrate if an update to an existing notification.
         if (update) {
             builder.setOnlyAlertOnce(true)
@@ -251,7 +289,7 @@ class NotificationHelper(private val context: Context) {
         notificationManager.cancel(id.toInt())
     }
 
-    fun canBubble(contact: Contact): Boolean {
+    override fun canBubble(contact: Contact): Boolean {
         val channel = notificationManager.getNotificationChannel(
             CHANNEL_NEW_MESSAGES,
             contact.shortcutId
@@ -259,7 +297,7 @@ class NotificationHelper(private val context: Context) {
         return notificationManager.areBubblesAllowed() || channel?.canBubble() == true
     }
 
-    fun updateNotification(chat: Chat, chatId: Long, prepopulatedMsgs: Boolean) {
+    override fun updateNotification(chat: Chat, chatId: Long, prepopulatedMsgs: Boolean) {
         if (!prepopulatedMsgs) {
             // Update notification bubble metadata to suppress notification so that the unread
             // message badge icon on the collapsed bubble is removed.
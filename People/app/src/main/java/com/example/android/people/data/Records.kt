@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+// The encoding of the values in the files of the messages: integers are written as varints, 7 bits
+// per byte with the high bit set on all but the last byte, and strings as their UTF-8 length
+// followed by their UTF-8 bytes.
+
+internal fun OutputStream.writeVarLong(value: Long) {
+    var remaining = value
+    while (remaining and 0x7FL.inv() != 0L) {
+        write(((remaining and 0x7F) or 0x80).toInt())
+        remaining = remaining ushr 7
+    }
+    write(remaining.toInt())
+}
+
+internal fun OutputStream.writeString(value: String) {
+    val bytes = value.toByteArray(Charsets.UTF_8)
+    writeVarLong(bytes.size.toLong())
+    write(bytes)
+}
+
+// A null string is written as length 0, and other strings with their length plus one.
+internal fun OutputStream.writeNullableString(value: String?) {
+    if (value == null) {
+        writeVarLong(0)
+        return
+    }
+    val bytes = value.toByteArray(Charsets.UTF_8)
+    writeVarLong(bytes.size + 1L)
+    write(bytes)
+}
+
+internal fun ByteBuffer.readVarLong(): Long {
+    var value = 0L
+    var shift = 0
+    while (true) {
+        val byte = get().toInt()
+        value = value or ((byte and 0x7F).toLong() shl shift)
+        if (byte and 0x80 == 0) {
+            return value
+        }
+        shift += 7
+    }
+}
+
+internal fun ByteBuffer.readString(): String = readBytes(readVarLong().toInt())
+
+internal fun ByteBuffer.readNullableString(): String? {
+    val length = readVarLong().toInt()
+    return if (length == 0) null else readBytes(length - 1)
+}
+
+private fun ByteBuffer.readBytes(length: Int): String {
+    val bytes = ByteArray(length)
+    get(bytes)
+    return String(bytes, Charsets.UTF_8)
+}
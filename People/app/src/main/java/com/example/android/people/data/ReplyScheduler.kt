@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * A source of time in milliseconds, such as `SystemClock::uptimeMillis`.
+ */
+fun interface Clock {
+    fun millis(): Long
+}
+
+/**
+ * Runs tasks after a delay, without a thread per pending task: tasks wait in a hashed timer wheel
+ * of [wheelSize] buckets that is advanced every [tickMillis], and run on [executor] once due.
+ *
+ * A task runs at the first tick at or after its deadline, so it's late by less than [tickMillis].
+ * Tasks that are due at the same tick run in the order of their deadlines, and tasks with the
+ * same deadline in the order they were scheduled.
+ *
+ * [start] advances the wheel on a single thread, which sleeps while no task is pending, until
+ * [stop]. Tests instead move [clock] forward and call [runDueTasks].
+ */
+class ReplyScheduler(
+    private val clock: Clock,
+    private val executor: Executor,
+    private val tickMillis: Long = DEFAULT_TICK_MILLIS,
+    wheelSize: Int = DEFAULT_WHEEL_SIZE
+) {
+
+    private class Timeout(val deadline: Long, val sequence: Long, val task: Runnable) {
+        var remainingRounds = 0L
+    }
+
+    init {
+        require(wheelSize > 0 && wheelSize and (wheelSize - 1) == 0) {
+            "The wheel size must be a power of two: $wheelSize"
+        }
+    }
+
+    private val wheel = Array(wheelSize) { ArrayList<Timeout>() }
+    private val mask = wheelSize - 1
+
+    // Tasks scheduled since the last tick, moved to the wheel by the thread advancing it.
+    private val scheduled = ConcurrentLinkedQueue<Timeout>()
+    private val sequence = AtomicLong()
+    private val pending = AtomicInteger()
+
+    private val startTime = clock.millis()
+
+    // The next tick to process; only used by the thread advancing the wheel.
+    private var tick = 0L
+
+    @Volatile
+    private var thread: Thread? = null
+
+    /**
+     * The number of tasks that are scheduled and didn't run yet.
+     */
+    val pendingCount: Int
+        get() = pending.get()
+
+    /**
+     * Run [task] on the executor once [delayMillis] have passed. Can be called from any thread.
+     */
+    fun schedule(delayMillis: Long, task: Runnable) {
+        scheduled.add(Timeout(clock.millis() + delayMillis, sequence.getAndIncrement(), task))
+        if (pending.getAndIncrement() == 0) {
+            thread?.let { LockSupport.unpark(it) }
+        }
+    }
+
+    /**
+     * Advance the wheel on a new thread until [stop] is called or the process ends.
+     */
+    @Synchronized
+    fun start() {
+        if (thread != null) {
+            return
+        }
+        thread = Thread({
+            while (!Thread.currentThread().isInterrupted) {
+                if (pending.get() == 0) {
+                    LockSupport.park(this)
+                    continue
+                }
+                runDueTasks()
+                val nextTick = startTime + tick * tickMillis
+                val sleep = nextTick - clock.millis()
+                if (sleep > 0) {
+                    try {
+                        Thread.sleep(sleep)
+                    } catch (e: InterruptedException) {
+                        return@Thread
+                    }
+                }
+            }
+        }, "ReplyScheduler").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /**
+     * Stop the thread of [start], and wait for it to end. The pending tasks stay in the wheel and
+     * run once it is started again.
+     */
+    @Synchronized
+    fun stop() {
+        val thread = thread ?: return
+        this.thread = null
+        thread.interrupt()
+        thread.join()
+    }
+
+    /**
+     * Run the tasks that are due by now. Must always be called from the same thread.
+     */
+    fun runDueTasks() {
+        val currentTick = (clock.millis() - startTime) / tickMillis
+        if (pending.get() == 0) {
+            // Nothing is waiting, skip the empty ticks.
+            tick = maxOf(tick, currentTick + 1)
+            return
+        }
+        val due = mutableListOf<Timeout>()
+        while (tick <= currentTick) {
+            moveScheduledToWheel()
+            val bucket = wheel[(tick and mask.toLong()).toInt()]
+            val iterator = bucket.iterator()
+            while (iterator.hasNext()) {
+                val timeout = iterator.next()
+                if (timeout.remainingRounds <= 0) {
+                    iterator.remove()
+                    due.add(timeout)
+                } else {
+                    timeout.remainingRounds--
+                }
+            }
+            tick++
+        }
+        due.sortWith(compareBy<Timeout> { it.deadline }.thenBy { it.sequence })
+        for (timeout in due) {
+            pending.decrementAndGet()
+            executor.execute(timeout.task)
+        }
+    }
+
+    private fun moveScheduledToWheel() {
+        while (true) {
+            val timeout = scheduled.poll() ?: return
+            // A task that is already due goes to the current tick.
+            val deadlineTick = maxOf(
+                (timeout.deadline - startTime + tickMillis - 1) / tickMillis,
+                tick
+            )
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.size
+            wheel[(deadlineTick and mask.toLong()).toInt()].add(timeout)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_TICK_MILLIS = 100L
+        const val DEFAULT_WHEEL_SIZE = 512
+    }
+}
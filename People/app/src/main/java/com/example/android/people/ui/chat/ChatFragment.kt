@@ -60,6 +60,8 @@ class ChatFragment : Fragment(R.layout.chat_fragment) {
     private val viewModel: ChatViewModel by viewModels()
     private val binding by viewBindings(ChatFragmentBinding::bind)
 
+    private var photoPrefetcher: PhotoPrefetcher? = null
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setHasOptionsMenu(true)
@@ -88,6 +90,10 @@ class ChatFragment : Fragment(R.layout.chat_fragment) {
             layoutManager = linearLayoutManager
             adapter = messageAdapter
         }
+        // Load the photos of the messages ahead of the scroll before they are bound.
+        photoPrefetcher = PhotoPrefetcher(messageAdapter, Glide.with(this)).apply {
+            attach(binding.messages)
+        }
 
         viewModel.contact.observe(viewLifecycleOwner) { contact ->
             if (contact == null) {
@@ -104,9 +110,14 @@ class ChatFragment : Fragment(R.layout.chat_fragment) {
             }
         }
 
-        viewModel.messages.observe(viewLifecycleOwner) { messages ->
-            messageAdapter.submitList(messages)
-            linearLayoutManager.scrollToPosition(messages.size - 1)
+        viewModel.messagePager.observe(viewLifecycleOwner) { pager ->
+            messageAdapter.setPager(pager)
+            linearLayoutManager.scrollToPosition(messageAdapter.itemCount - 1)
+        }
+
+        viewModel.messageDeltas.observe(viewLifecycleOwner) { delta ->
+            messageAdapter.addMessages(delta)
+            linearLayoutManager.scrollToPosition(messageAdapter.itemCount - 1)
         }
 
         if (prepopulateText != null) {
@@ -145,6 +156,12 @@ class ChatFragment : Fragment(R.layout.chat_fragment) {
         }
     }
 
+    override fun onDestroyView() {
+        photoPrefetcher?.detach()
+        photoPrefetcher = null
+        super.onDestroyView()
+    }
+
     override fun onStart() {
         super.onStart()
         val foreground = arguments?.getBoolean(ARG_FOREGROUND) == true
@@ -24,6 +24,7 @@ import androidx.lifecycle.map
 import androidx.lifecycle.switchMap
 import com.example.android.people.data.ChatRepository
 import com.example.android.people.data.DefaultChatRepository
+import java.util.concurrent.Executors
 
 class ChatViewModel @JvmOverloads constructor(
     application: Application,
@@ -69,6 +70,20 @@ class ChatViewModel @JvmOverloads constructor(
      */
     val messages = chatId.switchMap { id -> repository.findMessages(id) }
 
+    /**
+     * The messages added to this chat, starting with all the messages so far.
+     */
+    val messageDeltas = chatId.switchMap { id -> repository.findMessageDeltas(id) }
+
+    private val pagingExecutor = Executors.newSingleThreadExecutor()
+
+    /**
+     * Loads the older messages of this chat as they are scrolled to.
+     */
+    val messagePager = chatId.switchMap { id ->
+        repository.findMessagePages(id).map { source -> MessagePager(source, pagingExecutor) }
+    }
+
     /**
      * Whether the "Show as Bubble" button should be shown.
      */
@@ -105,5 +120,6 @@ class ChatViewModel @JvmOverloads constructor(
 
     override fun onCleared() {
         chatId.value?.let { id -> repository.deactivateChat(id) }
+        pagingExecutor.shutdown()
     }
 }
@@ -26,20 +26,28 @@ import android.widget.FrameLayout
 import android.widget.TextView
 import androidx.core.content.ContextCompat
 import androidx.core.view.ViewCompat
-import androidx.recyclerview.widget.DiffUtil
-import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.bumptech.glide.request.target.CustomTarget
 import com.bumptech.glide.request.transition.Transition
+import com.example.android.people.AssetFileProvider
 import com.example.android.people.R
 import com.example.android.people.data.Message
+import com.example.android.people.data.MessageDelta
 import com.example.android.people.databinding.MessageItemBinding
 
 class MessageAdapter(
     context: Context,
     private val onPhotoClicked: (photo: Uri) -> Unit
-) : ListAdapter<Message, MessageViewHolder>(DIFF_CALLBACK) {
+) : RecyclerView.Adapter<MessageViewHolder>() {
+
+    // The latest messages of the chat. The older ones are loaded by the pager.
+    private var messages: List<Message> = emptyList()
+    private var pager: MessagePager? = null
+
+    // The ID of the message at position 0.
+    private val firstId: Long
+        get() = pager?.firstId ?: messages.firstOrNull()?.id ?: 0L
 
     private val tint = object {
         val incoming: ColorStateList = ColorStateList.valueOf(
@@ -64,14 +72,80 @@ class MessageAdapter(
         )
     }
 
-    private val photoSize = context.resources.getDimensionPixelSize(R.dimen.photo_size)
+    // The margin of the messages in message_item.xml.
+    private val margin = context.resources.getDimensionPixelSize(R.dimen.spacing_small)
+
+    /**
+     * The size of the photos in the messages, in pixels.
+     */
+    val photoSize = context.resources.getDimensionPixelSize(R.dimen.photo_size)
+
+    /**
+     * Called with the position of every message with a photo that is bound.
+     */
+    var onPhotoBound: ((position: Int) -> Unit)? = null
 
     init {
         setHasStableIds(true)
     }
 
+    /**
+     * Show the messages of [delta]. Messages are only appended to a chat, so the new messages are
+     * inserted after the ones already shown, without comparing the lists.
+     */
+    fun addMessages(delta: MessageDelta) {
+        val start = itemCount
+        if (delta.start == 0 && start > 0) {
+            // This is another list of messages.
+            messages = delta.messages
+            notifyDataSetChanged()
+        } else {
+            messages = delta.messages
+            if (itemCount > start) {
+                notifyItemRangeInserted(start, itemCount - start)
+            }
+        }
+    }
+
+    /**
+     * Show the messages older than the ones added with [addMessages] as well, loading them with
+     * [pager] as they are scrolled to. Positions go from the first message of the pager.
+     */
+    fun setPager(pager: MessagePager) {
+        this.pager?.onPageLoaded = null
+        this.pager = pager
+        pager.onPageLoaded = { fromId, count ->
+            notifyItemRangeChanged((fromId - firstId).toInt(), count)
+        }
+        notifyDataSetChanged()
+    }
+
+    override fun getItemCount(): Int {
+        val last = messages.lastOrNull() ?: return 0
+        return (last.id - firstId + 1).toInt()
+    }
+
     override fun getItemId(position: Int): Long {
-        return getItem(position).id
+        // Messages have consecutive IDs, so this is the ID even when the message isn't loaded.
+        return firstId + position
+    }
+
+    /**
+     * What to load with Glide for the photo of the message at [position], or null if the message
+     * has no photo or isn't loaded.
+     */
+    fun photoAt(position: Int): Uri? {
+        val photoUri = getItem(position)?.photoUri ?: return null
+        return AssetFileProvider.thumbnailUri(photoUri, photoSize)
+    }
+
+    /**
+     * The message at [position], or null until it is loaded.
+     */
+    private fun getItem(position: Int): Message? {
+        val id = firstId + position
+        val recentId = messages.first().id
+        return if (id >= recentId) messages[(id - recentId).toInt()] else pager?.get(id)
     }
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): MessageViewHolder {
@@ -88,6 +162,23 @@ class MessageAdapter(
     override fun onBindViewHolder(holder: MessageViewHolder, position: Int) {
         val message = getItem(position)
         val lp = holder.binding.message.layoutParams as FrameLayout.LayoutParams
+        if (message == null) {
+            // Leave an empty message until the page is loaded, without the bubble of the message
+            // this row showed before.
+            holder.binding.message.run {
+                setTag(R.id.tag_photo, null)
+                setCompoundDrawables(null, null, null, null)
+                text = null
+                background = null
+                ViewCompat.setBackgroundTintList(this, null)
+                setPadding(0, 0, 0, 0)
+                layoutParams = lp.apply {
+                    gravity = Gravity.NO_GRAVITY
+                    setMargins(margin, margin, margin, margin)
+                }
+            }
+            return
+        }
         if (message.isIncoming) {
             holder.binding.message.run {
                 setBackgroundResource(R.drawable.message_incoming)
@@ -116,8 +207,9 @@ class MessageAdapter(
         if (message.photoUri != null) {
             holder.binding.message.setTag(R.id.tag_photo, message.photoUri)
             Glide.with(holder.binding.message)
-                .load(message.photoUri)
+                .load(AssetFileProvider.thumbnailUri(message.photoUri, photoSize))
                 .into(CompoundBottomTarget(holder.binding.message, photoSize, photoSize))
+            onPhotoBound?.invoke(position)
         } else {
             holder.binding.message.setTag(R.id.tag_photo, null)
             holder.binding.message.setCompoundDrawables(null, null, null, null)
@@ -126,18 +218,6 @@ class MessageAdapter(
     }
 }
 
-private val DIFF_CALLBACK = object : DiffUtil.ItemCallback<Message>() {
-
-    override fun areItemsTheSame(oldItem: Message, newItem: Message): Boolean {
-        return oldItem.id == newItem.id
-    }
-
-    override fun areContentsTheSame(oldItem: Message, newItem: Message): Boolean {
-        return oldItem == newItem
-    }
-
-}
-
 class MessageViewHolder(parent: ViewGroup) : RecyclerView.ViewHolder(
     LayoutInflater.from(parent.context).inflate(R.layout.message_item, parent, false)
 ) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.ui.chat
+
+import android.os.Handler
+import android.os.Looper
+import androidx.annotation.MainThread
+import com.example.android.people.data.Message
+import com.example.android.people.data.MessagePagingSource
+import java.util.concurrent.Executor
+
+/**
+ * Keeps the pages of messages around the ones on screen, loading them from [source] on [executor]
+ * when they are first needed.
+ *
+ * Pages have [pageSize] messages and start at [MessagePagingSource.firstId]. When a message in
+ * the older half of a page is asked for, the previous page is loaded as well, so that it's ready
+ * when scrolling up. At most [maxPages] pages are kept: the pages that were used least recently,
+ * which are the ones farthest from the screen, are dropped.
+ */
+@MainThread
+class MessagePager(
+    private val source: MessagePagingSource,
+    private val executor: Executor,
+    private val pageSize: Int = DEFAULT_PAGE_SIZE,
+    private val maxPages: Int = DEFAULT_MAX_PAGES
+) {
+
+    val firstId = source.firstId
+
+    /**
+     * Called with the first ID and the number of messages of every page that is loaded.
+     */
+    var onPageLoaded: ((fromId: Long, count: Int) -> Unit)? = null
+
+    private val pages = object : LinkedHashMap<Long, List<Message>>(maxPages, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Long, List<Message>>) =
+            size > maxPages
+    }
+
+    private val loadingPages = mutableSetOf<Long>()
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /**
+     * The message with the given [id], or null if its page isn't loaded yet. The page is then
+     * loaded, and [onPageLoaded] is called once it is.
+     */
+    operator fun get(id: Long): Message? {
+        val page = (id - firstId) / pageSize
+        val offset = ((id - firstId) % pageSize).toInt()
+        val messages = pages[page]
+        if (messages == null) {
+            load(page)
+        } else if (offset < pageSize / 2 && page > 0 && !pages.containsKey(page - 1)) {
+            load(page - 1)
+        }
+        return messages?.getOrNull(offset)
+    }
+
+    private fun load(page: Long) {
+        if (!loadingPages.add(page)) {
+            return
+        }
+        val fromId = firstId + page * pageSize
+        executor.execute {
+            val messages = source.load(fromId, fromId + pageSize)
+            mainHandler.post {
+                loadingPages.remove(page)
+                pages[page] = messages
+                onPageLoaded?.invoke(fromId, messages.size)
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 50
+        const val DEFAULT_MAX_PAGES = 6
+    }
+}
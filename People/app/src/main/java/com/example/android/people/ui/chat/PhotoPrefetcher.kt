@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.ui.chat
+
+import android.graphics.drawable.Drawable
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import com.bumptech.glide.RequestManager
+import com.bumptech.glide.load.DataSource
+import com.bumptech.glide.load.engine.GlideException
+import com.bumptech.glide.request.RequestListener
+import com.bumptech.glide.request.target.Target
+import kotlin.math.abs
+
+/**
+ * Loads the photos of the messages that are about to be scrolled to, so that they are in the
+ * memory cache of Glide when they are bound.
+ *
+ * The photos of the next [minRows] messages in the scroll direction are loaded, and more when
+ * scrolling fast, up to [maxRows]. At most [maxRequests] photos are loaded at once, and the loads
+ * of messages that are not ahead of the screen anymore are cancelled.
+ */
+class PhotoPrefetcher(
+    private val adapter: MessageAdapter,
+    private val requests: RequestManager,
+    private val minRows: Int = DEFAULT_MIN_ROWS,
+    private val maxRows: Int = DEFAULT_MAX_ROWS,
+    private val maxRequests: Int = DEFAULT_MAX_REQUESTS
+) : RecyclerView.OnScrollListener() {
+
+    // The prefetched photos by position, the positions whose photo is still loading and the
+    // positions whose photo is ready.
+    private val targets = mutableMapOf<Int, Target<Drawable>>()
+    private val loading = mutableSetOf<Int>()
+    private val ready = mutableSetOf<Int>()
+
+    private var recyclerView: RecyclerView? = null
+
+    /**
+     * The number of photos bound after they were prefetched.
+     */
+    var hitCount = 0
+        private set
+
+    /**
+     * The number of photos bound without being prefetched.
+     */
+    var missCount = 0
+        private set
+
+    /**
+     * The share of the bound photos that were prefetched.
+     */
+    val hitRate: Float
+        get() = if (hitCount + missCount == 0) 0f else hitCount.toFloat() / (hitCount + missCount)
+
+    fun attach(recyclerView: RecyclerView) {
+        this.recyclerView = recyclerView
+        recyclerView.addOnScrollListener(this)
+        adapter.onPhotoBound = { position ->
+            if (position in ready) hitCount++ else missCount++
+        }
+    }
+
+    fun detach() {
+        recyclerView?.removeOnScrollListener(this)
+        recyclerView = null
+        adapter.onPhotoBound = null
+        targets.values.forEach { requests.clear(it) }
+        targets.clear()
+        loading.clear()
+        ready.clear()
+    }
+
+    override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+        if (dy == 0) {
+            return
+        }
+        val layoutManager = recyclerView.layoutManager as? LinearLayoutManager ?: return
+        val first = layoutManager.findFirstVisibleItemPosition()
+        val last = layoutManager.findLastVisibleItemPosition()
+        if (first == RecyclerView.NO_POSITION) {
+            return
+        }
+        val rowHeight = recyclerView.height / (last - first + 1)
+        val positions = prefetchPositions(
+            first, last, dy, rowHeight, adapter.itemCount, minRows, maxRows
+        )
+        prefetch(positions)
+    }
+
+    private fun prefetch(positions: List<Int>) {
+        // Cancel the loads of the messages that are no longer ahead.
+        val iterator = targets.entries.iterator()
+        while (iterator.hasNext()) {
+            val (position, target) = iterator.next()
+            if (position !in positions) {
+                requests.clear(target)
+                iterator.remove()
+                loading.remove(position)
+                ready.remove(position)
+            }
+        }
+        for (position in positions) {
+            if (loading.size >= maxRequests) {
+                break
+            }
+            if (position in targets) {
+                continue
+            }
+            val photo = adapter.photoAt(position) ?: continue
+            // The listener is called right away if the photo is in the memory cache.
+            loading.add(position)
+            targets[position] = requests.load(photo)
+                .listener(object : RequestListener<Drawable> {
+                    override fun onResourceReady(
+                        resource: Drawable?,
+                        model: Any?,
+                        target: Target<Drawable>?,
+                        dataSource: DataSource?,
+                        isFirstResource: Boolean
+                    ): Boolean {
+                        loading.remove(position)
+                        ready.add(position)
+                        return false
+                    }
+
+                    override fun onLoadFailed(
+                        e: GlideException?,
+                        model: Any?,
+                        target: Target<Drawable>?,
+                        isFirstResource: Boolean
+                    ): Boolean {
+                        loading.remove(position)
+                        return false
+                    }
+                })
+                .preload(adapter.photoSize, adapter.photoSize)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MIN_ROWS = 4
+        const val DEFAULT_MAX_ROWS = 16
+        const val DEFAULT_MAX_REQUESTS = 6
+
+        // How many frames of scrolling at the current speed to look ahead.
+        private const val FRAMES_AHEAD = 10
+
+        /**
+         * The positions ahead of the visible ones from [first] to [last], nearest first. [dy] is
+         * the distance scrolled since the last frame; the faster the scroll, the further ahead.
+         */
+        internal fun prefetchPositions(
+            first: Int,
+            last: Int,
+            dy: Int,
+            rowHeight: Int,
+            itemCount: Int,
+            minRows: Int,
+            maxRows: Int
+        ): List<Int> {
+            val rowsAhead = if (rowHeight > 0) abs(dy) * FRAMES_AHEAD / rowHeight else 0
+            val rows = (minRows + rowsAhead).coerceAtMost(maxRows)
+            return if (dy > 0) {
+                (last + 1..minOf(last + rows, itemCount - 1)).toList()
+            } else {
+                (first - 1 downTo maxOf(first - rows, 0)).toList()
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people
+
+import android.net.Uri
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class AssetFileProviderTest {
+
+    @Test
+    fun thumbnailUri() {
+        val uri = Uri.parse("content://com.example.android.people/photo/sheep_full.jpg")
+        val thumbnail = AssetFileProvider.thumbnailUri(uri, 200, 100)
+        assertThat(thumbnail.pathSegments).containsExactly("photo", "sheep_full.jpg").inOrder()
+        assertThat(thumbnail.getQueryParameter("w")).isEqualTo("200")
+        assertThat(thumbnail.getQueryParameter("h")).isEqualTo("100")
+    }
+
+    @Test
+    fun otherProvidersAreNotChanged() {
+        val uri = Uri.parse("content://com.example.keyboard/image/1")
+        assertThat(AssetFileProvider.thumbnailUri(uri, 200)).isEqualTo(uri)
+    }
+}
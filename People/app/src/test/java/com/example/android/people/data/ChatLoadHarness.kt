@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.arch.core.executor.ArchTaskExecutor
+import androidx.arch.core.executor.TaskExecutor
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Drives a [DefaultChatRepository] with synthetic load and measures its latencies.
+ *
+ * [messagesPerSecond] messages are sent for [durationMillis], to each of [contactCount] contacts
+ * in turn, and every contact replies after [replyDelayMillis]. As in the app, messages are sent
+ * and observed on a single main thread, so the latencies include waiting for it. Notifications go
+ * to a fake [ChatNotifications] that records when they are posted.
+ */
+class ChatLoadHarness(
+    private val contactCount: Int = 10,
+    private val messagesPerSecond: Int = 100,
+    private val durationMillis: Long = 1_000L,
+    private val replyDelayMillis: Long = 100L,
+    private val notificationWindowMillis: Long = 100L,
+    private val tickMillis: Long = 10L
+) {
+
+    /**
+     * The number of messages sent by [run].
+     */
+    val messageCount = (messagesPerSecond * durationMillis / 1000).toInt()
+
+    /**
+     * From [ChatRepository.sendMessage] until the message is observed.
+     */
+    val delivered = LatencyHistogram()
+
+    /**
+     * From [ChatRepository.sendMessage] until the reply is observed.
+     */
+    val replied = LatencyHistogram()
+
+    /**
+     * From [ChatRepository.sendMessage] until a notification shows the reply.
+     */
+    val notified = LatencyHistogram()
+
+    // When each message was sent, by its text.
+    private val sentAt = AtomicLongArray(messageCount)
+
+    private val pending = CountDownLatch(3 * messageCount)
+
+    private val contacts = (1L..contactCount).map { id ->
+        object : Contact(id, "Contact $id", "cat.jpg") {
+            override fun reply(text: String) = buildReply().apply { this.text = text }
+        }
+    }
+
+    /**
+     * Sends all the messages, then waits up to [timeoutMillis] for all of them to be measured.
+     * Returns false if some of them weren't.
+     */
+    fun run(timeoutMillis: Long = durationMillis + TIMEOUT_MILLIS): Boolean {
+        var mainThread: Thread? = null
+        val main = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "main").also { mainThread = it }
+        }
+        val executor = Executors.newFixedThreadPool(THREADS)
+        ArchTaskExecutor.getInstance().setDelegate(object : TaskExecutor() {
+            override fun executeOnDiskIO(runnable: Runnable) = executor.execute(runnable)
+            override fun postToMainThread(runnable: Runnable) = main.execute(runnable)
+            override fun isMainThread() = Thread.currentThread() === mainThread
+        })
+        val replyScheduler = ReplyScheduler({ System.nanoTime() / 1_000_000 }, executor, tickMillis)
+        try {
+            replyScheduler.start()
+            val repository = DefaultChatRepository(
+                ContactDirectory(contacts),
+                FakeNotifications(),
+                executor,
+                replyScheduler,
+                replyDelayMillis = replyDelayMillis,
+                notificationWindowMillis = notificationWindowMillis
+            )
+            main.execute { observe(repository) }
+            send(repository, main)
+            return pending.await(timeoutMillis, TimeUnit.MILLISECONDS)
+        } finally {
+            replyScheduler.stop()
+            main.shutdown()
+            executor.shutdown()
+            ArchTaskExecutor.getInstance().setDelegate(null)
+        }
+    }
+
+    fun report(): String {
+        return "$messageCount messages to $contactCount contacts at $messagesPerSecond/s\n" +
+            "delivered: $delivered\nreplied: $replied\nnotified: $notified"
+    }
+
+    private fun observe(repository: ChatRepository) {
+        for (contact in contacts) {
+            // The number of messages of the chat seen so far.
+            var seen = 0
+            repository.findMessages(contact.id).observeForever { messages ->
+                val now = System.nanoTime()
+                for (message in messages.subList(minOf(seen, messages.size), messages.size)) {
+                    val sequence = message.text.toIntOrNull() ?: continue
+                    val latency = now - sentAt[sequence]
+                    if (message.isIncoming) replied.record(latency) else delivered.record(latency)
+                    pending.countDown()
+                }
+                seen = maxOf(seen, messages.size)
+            }
+        }
+    }
+
+    private fun send(repository: ChatRepository, main: Executor) {
+        val interval = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond
+        val start = System.nanoTime()
+        for (sequence in 0 until messageCount) {
+            LockSupport.parkNanos(start + sequence * interval - System.nanoTime())
+            val id = contacts[sequence % contactCount].id
+            main.execute {
+                sentAt[sequence] = System.nanoTime()
+                repository.sendMessage(id, sequence.toString(), null, null)
+            }
+        }
+    }
+
+    /**
+     * Records the latency of the replies shown by each notification.
+     */
+    private inner class FakeNotifications : ChatNotifications {
+
+        // The number of messages of each chat shown in a notification so far, by chat ID.
+        private val shown = mutableMapOf<Long, Int>()
+
+        override fun setUpNotificationChannels() = Unit
+
+        @Synchronized
+        override fun showNotification(chat: Chat, fromUser: Boolean, update: Boolean) {
+            val now = System.nanoTime()
+            val messages = chat.messages
+            val from = shown.put(chat.contact.id, messages.size) ?: 0
+            for (message in messages.subList(from, messages.size)) {
+                if (message.isIncoming) {
+                    val sequence = message.text.toIntOrNull() ?: continue
+                    notified.record(now - sentAt[sequence])
+                    pending.countDown()
+                }
+            }
+        }
+
+        override fun updateNotification(chat: Chat, chatId: Long, prepopulatedMsgs: Boolean) = Unit
+
+        override fun canBubble(contact: Contact) = true
+    }
+
+    companion object {
+        private const val THREADS = 4
+        private const val TIMEOUT_MILLIS = 10_000L
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import java.util.concurrent.TimeUnit
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Sends messages to the repository at a steady rate for a few seconds. This only runs with
+ * `-Pbenchmarks`.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class ChatLoadTest {
+
+    @Test
+    fun steadyLoad() {
+        val replyDelayMillis = 100L
+        val harness = ChatLoadHarness(
+            contactCount = 20,
+            messagesPerSecond = 200,
+            durationMillis = 2_000L,
+            replyDelayMillis = replyDelayMillis,
+            notificationWindowMillis = 100L
+        )
+        val finished = harness.run()
+        // The report tells how far the run got if it didn't finish.
+        assertWithMessage(harness.report()).that(finished).isTrue()
+        assertThat(harness.delivered.count).isEqualTo(harness.messageCount)
+        assertThat(harness.replied.count).isEqualTo(harness.messageCount)
+        assertThat(harness.notified.count).isEqualTo(harness.messageCount)
+        // No reply comes before its delay.
+        assertThat(harness.replied.percentile(0.0))
+            .isAtLeast(TimeUnit.MILLISECONDS.toNanos(replyDelayMillis))
+    }
+}
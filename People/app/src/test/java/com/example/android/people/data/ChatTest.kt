@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class ChatTest {
+
+    private val contact = Contact.CONTACTS.first()
+
+    @Test
+    fun messagesAreNumbered() {
+        val chat = Chat(contact)
+        chat.addMessage(contact.reply("a"))
+        assertThat(chat.messages.map { it.id }).containsExactly(1L, 2L, 3L).inOrder()
+        assertThat(chat.messages.last().text).isEqualTo("Meow")
+    }
+
+    @Test
+    fun snapshotDoesNotChange() {
+        val chat = Chat(contact)
+        val messages = chat.messages
+        chat.addMessage(contact.reply("a"))
+        assertThat(messages).hasSize(2)
+        assertThat(chat.messages).hasSize(3)
+    }
+
+    @Test
+    fun concurrentAddMessage() {
+        val threads = 8
+        val messagesPerThread = 5000
+        val chat = Chat(contact)
+        val notified = AtomicInteger()
+        chat.addListener { messages -> notified.accumulateAndGet(messages.size, ::maxOf) }
+        val executor = Executors.newFixedThreadPool(threads)
+        val start = CountDownLatch(1)
+        repeat(threads) { thread ->
+            executor.execute {
+                start.await()
+                repeat(messagesPerThread) { i ->
+                    chat.addMessage(contact.buildReply().apply { text = "$thread:$i" })
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue()
+
+        val messages = chat.messages
+        val total = 2 + threads * messagesPerThread
+        // No message is lost or duplicated, and the IDs follow the order of the chat.
+        assertThat(messages).hasSize(total)
+        assertThat(messages.map { it.id }).isEqualTo((1L..total).toList())
+        assertThat(messages.drop(2).map { it.text }.toSet()).hasSize(threads * messagesPerThread)
+        // The messages of each thread are in the order that thread added them.
+        repeat(threads) { thread ->
+            val texts = messages.map { it.text }.filter { it.startsWith("$thread:") }
+            assertThat(texts).isEqualTo((0 until messagesPerThread).map { "$thread:$it" })
+        }
+        // The listeners were told about every message.
+        assertThat(notified.get()).isEqualTo(total)
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class ContactDirectoryTest {
+
+    private fun contact(id: Long, name: String) = object : Contact(id, name, "cat.jpg") {
+        override fun reply(text: String) = buildReply().apply { this.text = text }
+    }
+
+    @Test
+    fun findById() {
+        val directory = ContactDirectory()
+        for (contact in Contact.CONTACTS) {
+            assertThat(directory[contact.id]).isEqualTo(contact)
+        }
+        assertThat(directory[100L]).isNull()
+    }
+
+    @Test
+    fun searchByPrefix() {
+        val directory = ContactDirectory(
+            listOf(
+                contact(1L, "Cat"),
+                contact(2L, "Big Cat"),
+                contact(3L, "Catfish"),
+                contact(4L, "Dog")
+            )
+        )
+        assertThat(directory.search("cat").map { it.id }).containsExactly(1L, 2L, 3L).inOrder()
+        assertThat(directory.search("CATF").map { it.id }).containsExactly(3L)
+        assertThat(directory.search("b").map { it.id }).containsExactly(2L)
+        assertThat(directory.search("x")).isEmpty()
+        assertThat(directory.search("", limit = 2).map { it.id }).containsExactly(1L, 2L).inOrder()
+    }
+
+    @Test
+    fun searchManyContacts() {
+        val directory = ContactDirectory((1L..50_000L).map { contact(it, "Contact $it") })
+        assertThat(directory.search("4999").map { it.id }).containsExactly(4999L, 49990L,
+            49991L, 49992L, 49993L, 49994L, 49995L, 49996L, 49997L, 49998L, 49999L).inOrder()
+        assertThat(directory.search("contact", limit = 3).map { it.id })
+            .containsExactly(1L, 2L, 3L).inOrder()
+    }
+
+    @Test
+    fun mostRecent() {
+        val directory = ContactDirectory((1L..10L).map { contact(it, "Contact $it") })
+        directory.markActive(5L, 100L)
+        directory.markActive(3L, 200L)
+        directory.markActive(5L, 300L)
+        // An older message doesn't move the contact back.
+        directory.markActive(3L, 50L)
+        assertThat(directory.mostRecent(4).map { it.id }).containsExactly(5L, 3L, 1L, 2L).inOrder()
+        assertThat(directory.mostRecent(1).map { it.id }).containsExactly(5L)
+    }
+
+    @Test
+    fun shortcutIds() {
+        for (contact in Contact.CONTACTS) {
+            assertThat(Contact.idOfShortcut(contact.shortcutId)).isEqualTo(contact.id)
+        }
+        assertThat(Contact.idOfShortcut(null)).isNull()
+        assertThat(Contact.idOfShortcut("chat_1")).isNull()
+    }
+}
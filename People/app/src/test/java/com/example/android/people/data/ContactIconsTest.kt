@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class ContactIconsTest {
+
+    @Test
+    fun sampleSizeKeepsIconSize() {
+        assertThat(ContactIcons.sampleSize(4000, 3000, 432)).isEqualTo(4)
+        assertThat(ContactIcons.sampleSize(864, 864, 432)).isEqualTo(2)
+        assertThat(ContactIcons.sampleSize(863, 2000, 432)).isEqualTo(1)
+    }
+
+    @Test
+    fun noSamplingForSmallImages() {
+        assertThat(ContactIcons.sampleSize(200, 200, 432)).isEqualTo(1)
+    }
+
+    @Test
+    fun smallImagesAreNotScaledUp() {
+        assertThat(ContactIcons.scaledSize(256, 432)).isEqualTo(256)
+        assertThat(ContactIcons.scaledSize(500, 432)).isEqualTo(432)
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class DefaultChatRepositoryTest {
+
+    @get:Rule
+    val instantTaskExecutorRule = InstantTaskExecutorRule()
+
+    private var now = 0L
+
+    private val scheduler = ReplyScheduler({ now }, { it.run() }, tickMillis = 10)
+
+    // The IDs of the chats whose notification was shown.
+    private val shown = mutableListOf<Long>()
+
+    private val notifications = object : ChatNotifications {
+        override fun setUpNotificationChannels() = Unit
+
+        override fun showNotification(chat: Chat, fromUser: Boolean, update: Boolean) {
+            shown.add(chat.contact.id)
+        }
+
+        override fun updateNotification(chat: Chat, chatId: Long, prepopulatedMsgs: Boolean) = Unit
+
+        override fun canBubble(contact: Contact) = true
+    }
+
+    // The chats are restored right away, which needs the rule.
+    private val repository by lazy {
+        DefaultChatRepository(
+            ContactDirectory(),
+            notifications,
+            { it.run() },
+            scheduler,
+            replyDelayMillis = 1000,
+            notificationWindowMillis = 100
+        )
+    }
+
+    private fun advanceBy(millis: Long) {
+        now += millis
+        scheduler.runDueTasks()
+    }
+
+    @Test
+    fun replyIsNotified() {
+        repository.sendMessage(1L, "Hello", null, null)
+        advanceBy(1000)
+        assertThat(shown).isEmpty()
+        advanceBy(100)
+        assertThat(shown).containsExactly(1L)
+    }
+
+    @Test
+    fun chatOpenedWhileCoalescingIsNotNotified() {
+        repository.sendMessage(1L, "Hello", null, null)
+        advanceBy(1000)
+        repository.activateChat(1L)
+        advanceBy(100)
+        assertThat(shown).isEmpty()
+    }
+
+    @Test
+    fun otherChatsAreStillNotified() {
+        repository.sendMessage(1L, "Hello", null, null)
+        repository.sendMessage(2L, "Hello", null, null)
+        advanceBy(1000)
+        repository.activateChat(2L)
+        advanceBy(100)
+        assertThat(shown).containsExactly(1L)
+    }
+}
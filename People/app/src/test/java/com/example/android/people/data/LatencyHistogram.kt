@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A histogram of latencies in nanoseconds, which can be recorded from any thread.
+ *
+ * The latencies are counted in buckets a quarter of a power of two wide, so that a percentile is
+ * within 25% of the actual latency whatever the range of the latencies.
+ */
+class LatencyHistogram {
+
+    private val counts = AtomicLongArray(BUCKETS)
+    private val total = AtomicLong()
+    private val max = AtomicLong()
+
+    /**
+     * The number of recorded latencies.
+     */
+    val count: Long
+        get() = total.get()
+
+    /**
+     * The highest recorded latency.
+     */
+    val maxNanos: Long
+        get() = max.get()
+
+    fun record(nanos: Long) {
+        val latency = maxOf(nanos, 0L)
+        counts.incrementAndGet(bucket(latency))
+        total.incrementAndGet()
+        max.accumulateAndGet(latency, ::maxOf)
+    }
+
+    /**
+     * The latency that [percent] of the recorded latencies are at or below, rounded up to the
+     * bucket it falls into.
+     */
+    fun percentile(percent: Double): Long {
+        val target = maxOf((count * percent / 100).toLong(), 1L)
+        var seen = 0L
+        for (bucket in 0 until BUCKETS) {
+            seen += counts[bucket]
+            if (seen >= target) {
+                return minOf(upperBound(bucket), maxNanos)
+            }
+        }
+        return maxNanos
+    }
+
+    override fun toString(): String {
+        fun millis(nanos: Long) = "%.1f".format(nanos.toDouble() / TimeUnit.MILLISECONDS.toNanos(1))
+        return "n=$count p50=${millis(percentile(50.0))} p90=${millis(percentile(90.0))} " +
+            "p99=${millis(percentile(99.0))} max=${millis(maxNanos)} ms"
+    }
+
+    companion object {
+        private const val BUCKETS = 4 * 62
+
+        /**
+         * The bucket of [nanos]: 0 to 3 for themselves, then four buckets per power of two.
+         */
+        internal fun bucket(nanos: Long): Int {
+            if (nanos < 4) {
+                return nanos.toInt()
+            }
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(nanos)
+            return 4 * (exponent - 1) + ((nanos shr (exponent - 2)) and 3).toInt()
+        }
+
+        internal fun upperBound(bucket: Int): Long {
+            if (bucket < 4) {
+                return bucket.toLong()
+            }
+            val shift = bucket / 4 - 1
+            val lowerBound = (4L + bucket % 4) shl shift
+            return lowerBound + (1L shl shift) - 1
+        }
+    }
+}
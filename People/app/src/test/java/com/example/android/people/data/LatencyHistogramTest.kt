@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class LatencyHistogramTest {
+
+    @Test
+    fun bucketsCoverEveryLatency() {
+        var previous = -1
+        for (nanos in listOf(0L, 1L, 3L, 4L, 7L, 8L, 9L, 1_000L, 1_000_000L, Long.MAX_VALUE)) {
+            val bucket = LatencyHistogram.bucket(nanos)
+            assertThat(bucket).isAtLeast(previous)
+            assertThat(LatencyHistogram.upperBound(bucket)).isAtLeast(nanos)
+            assertThat(LatencyHistogram.upperBound(bucket) - nanos).isAtMost(nanos / 4)
+            previous = bucket
+        }
+    }
+
+    @Test
+    fun percentiles() {
+        val histogram = LatencyHistogram()
+        for (millis in 1L..100L) {
+            histogram.record(millis * 1_000_000)
+        }
+        assertThat(histogram.count).isEqualTo(100L)
+        assertThat(histogram.maxNanos).isEqualTo(100_000_000L)
+        assertThat(histogram.percentile(50.0)).isIn(50_000_000L..62_500_000L)
+        assertThat(histogram.percentile(99.0)).isIn(99_000_000L..100_000_000L)
+        assertThat(histogram.percentile(100.0)).isEqualTo(100_000_000L)
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import kotlin.random.Random
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Measures the latency of [MessageIndex.search] over a million messages in 1,000 chats, with
+ * words picked from a vocabulary of 10,000 where a few words are much more frequent than the
+ * others, as in natural text.
+ *
+ * This only runs with `-Pbenchmarks`, and writes the latencies to
+ * `build/reports/benchmarks/MessageIndexBenchmark.txt` instead of checking them, as they depend
+ * on the machine.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class MessageIndexBenchmark {
+
+    private val random = Random(42)
+
+    private val vocabulary = List(VOCABULARY_SIZE) { i -> "w${i.toString(36)}" }
+
+    // Skewed towards the start of the vocabulary.
+    private fun word(): String {
+        val x = random.nextDouble()
+        return vocabulary[(VOCABULARY_SIZE * x * x * x).toInt()]
+    }
+
+    @Test
+    fun searchMillionMessages() {
+        val index = MessageIndex()
+        val startIndexing = System.nanoTime()
+        for (i in 0 until MESSAGES) {
+            val chatId = (i % CHATS).toLong()
+            val text = List(WORDS_PER_MESSAGE) { word() }.joinToString(" ")
+            index.add(chatId, Message(i / CHATS + 1L, chatId, text, null, null, i.toLong()))
+        }
+        val indexingMillis = (System.nanoTime() - startIndexing) / 1_000_000
+        assertThat(index.size).isEqualTo(MESSAGES)
+
+        // Frequent and rare words, several words, and prefixes up to one that matches everything.
+        val queries = listOf(
+            "w0 ", "w1 w2 ", "w5k ", "w2 w3 w4 ", "w7", "w1", "w", "w3 w9", "wzz "
+        )
+        // Warm up the JIT.
+        repeat(3) { queries.forEach { index.search(it) } }
+        val report = StringBuilder("Indexed $MESSAGES messages in $indexingMillis ms\n")
+        for (query in queries) {
+            val nanos = LongArray(RUNS) {
+                val start = System.nanoTime()
+                index.search(query)
+                System.nanoTime() - start
+            }.sorted()
+            val ranges = index.search(query)
+            assertThat(ranges.sumOf { (it.toId - it.fromId).toInt() })
+                .isAtMost(MessageIndex.DEFAULT_LIMIT)
+            report.append(
+                "\"$query\": ${ranges.size} ranges, " +
+                    "median ${nanos[RUNS / 2] / 1000} us, p90 ${nanos[RUNS * 9 / 10] / 1000} us\n"
+            )
+        }
+        File(REPORT_PATH).apply { parentFile?.mkdirs() }.writeText(report.toString())
+    }
+
+    companion object {
+        private const val MESSAGES = 1_000_000
+        private const val CHATS = 1_000
+        private const val WORDS_PER_MESSAGE = 8
+        private const val VOCABULARY_SIZE = 10_000
+        private const val RUNS = 21
+
+        private const val REPORT_PATH = "build/reports/benchmarks/MessageIndexBenchmark.txt"
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import kotlin.concurrent.thread
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class MessageIndexTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun message(id: Long, text: String, timestamp: Long = id) =
+        Message(id, 1L, text, null, null, timestamp)
+
+    private fun index(vararg chats: Pair<Long, List<String>>) = MessageIndex().apply {
+        for ((chatId, texts) in chats) {
+            texts.forEachIndexed { i, text -> add(chatId, message(i + 1L, text)) }
+        }
+    }
+
+    @Test
+    fun tokenize() {
+        assertThat(MessageIndex.tokenize("Hello, World! It's 5 o'clock."))
+            .containsExactly("hello", "world", "it", "s", "5", "o", "clock").inOrder()
+        assertThat(MessageIndex.tokenize("  ")).isEmpty()
+    }
+
+    @Test
+    fun searchWords() {
+        val index = index(1L to listOf("the cat sat", "a dog", "the dog sat", "cat and dog"))
+        assertThat(index.search("dog ")).containsExactly(MessageRange(1L, 2L, 5L))
+        assertThat(index.search("the sat ")).containsExactly(
+            MessageRange(1L, 3L, 4L),
+            MessageRange(1L, 1L, 2L)
+        ).inOrder()
+        assertThat(index.search("DOG CAT ")).containsExactly(MessageRange(1L, 4L, 5L))
+        assertThat(index.search("bird ")).isEmpty()
+        assertThat(index.search("")).isEmpty()
+    }
+
+    @Test
+    fun searchPrefix() {
+        val index = index(1L to listOf("catalog", "cat", "dog", "concat"))
+        assertThat(index.search("cat")).containsExactly(MessageRange(1L, 1L, 3L))
+        // A space ends the word.
+        assertThat(index.search("cat ")).containsExactly(MessageRange(1L, 2L, 3L))
+    }
+
+    @Test
+    fun searchAcrossChats_mostRecentFirst() {
+        val index = MessageIndex()
+        index.add(1L, message(1L, "hello", timestamp = 100L))
+        index.add(2L, message(1L, "hello", timestamp = 300L))
+        index.add(1L, message(2L, "bye", timestamp = 400L))
+        index.add(1L, message(3L, "hello", timestamp = 200L))
+        assertThat(index.search("hello")).containsExactly(
+            MessageRange(2L, 1L, 2L),
+            MessageRange(1L, 3L, 4L),
+            MessageRange(1L, 1L, 2L)
+        ).inOrder()
+        assertThat(index.search("hello", limit = 2)).containsExactly(
+            MessageRange(2L, 1L, 2L),
+            MessageRange(1L, 3L, 4L)
+        ).inOrder()
+    }
+
+    @Test
+    fun chatAddsMessages() {
+        val index = MessageIndex()
+        val contact = Contact.CONTACTS.first()
+        val chat = Chat(contact, index = index)
+        chat.addMessage(contact.reply("hello"))
+        assertThat(index.size).isEqualTo(3)
+        assertThat(index.lastId(contact.id)).isEqualTo(3L)
+        assertThat(index.search("meow")).containsExactly(MessageRange(contact.id, 3L, 4L))
+        // A chat with a history that is already indexed doesn't index it again.
+        Chat(contact, chat.messages, index)
+        assertThat(index.size).isEqualTo(3)
+    }
+
+    @Test
+    fun writeAndRead() {
+        val index = index(
+            1L to (1..500).map { "message number $it" },
+            7L to listOf("number one", "number two")
+        )
+        val file = File(folder.root, "messages.idx")
+        index.write(file)
+        val read = MessageIndex.read(file)
+        assertThat(read.size).isEqualTo(502)
+        assertThat(read.lastId(1L)).isEqualTo(500L)
+        assertThat(read.lastId(7L)).isEqualTo(2L)
+        for (query in listOf("number", "number 25", "two", "message 7")) {
+            assertThat(read.search(query)).isEqualTo(index.search(query))
+        }
+    }
+
+    @Test
+    fun readMissingOrBroken() {
+        val file = File(folder.root, "messages.idx")
+        assertThat(MessageIndex.read(file).size).isEqualTo(0)
+        file.writeBytes(byteArrayOf(5, 1))
+        assertThat(MessageIndex.read(file).size).isEqualTo(0)
+    }
+
+    @Test
+    fun readInvalidCounts() {
+        val file = File(folder.root, "messages.idx")
+        // More chats than bytes in the file.
+        file.writeBytes(byteArrayOf(-1, -1, -1, -1, 7))
+        assertThat(MessageIndex.read(file).size).isEqualTo(0)
+        // A document of chat slot 5 when there is one chat.
+        file.writeBytes(byteArrayOf(1, 7, 1, 5, 1, 1, 0))
+        assertThat(MessageIndex.read(file).size).isEqualTo(0)
+        // The term "a" in document 3 when there is one document.
+        file.writeBytes(byteArrayOf(1, 7, 1, 0, 1, 1, 1, 1, 'a'.code.toByte(), 1, 3))
+        assertThat(MessageIndex.read(file).size).isEqualTo(0)
+        // The same term in document 0 is fine.
+        file.writeBytes(byteArrayOf(1, 7, 1, 0, 1, 1, 1, 1, 'a'.code.toByte(), 1, 0))
+        assertThat(MessageIndex.read(file).search("a ")).containsExactly(MessageRange(7L, 1L, 2L))
+    }
+
+    @Test
+    fun writeWhileAdding() {
+        val index = MessageIndex()
+        val file = File(folder.root, "messages.idx")
+        val adding = thread {
+            for (id in 1..20_000L) {
+                index.add(1L, message(id, "message $id"))
+            }
+        }
+        repeat(5) {
+            index.write(file)
+            // Every write has all the messages added before it and none after.
+            val read = MessageIndex.read(file)
+            assertThat(read.lastId(1L)).isEqualTo(read.size.toLong())
+            assertThat(read.search("message ", read.size + 1).size).isAtMost(1)
+        }
+        adding.join()
+    }
+}
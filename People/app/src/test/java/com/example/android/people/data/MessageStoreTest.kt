@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import android.net.Uri
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.io.RandomAccessFile
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class MessageStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val photo = Uri.parse("content://com.example.android.people/photo/sheep_full.jpg")
+
+    private fun message(id: Long) = Message(
+        id,
+        id % 3,
+        "Message $id ${"é".repeat((id % 7).toInt())}",
+        if (id % 5 == 0L) photo else null,
+        if (id % 5 == 0L) "image/jpeg" else null,
+        1_600_000_000_000L + id
+    )
+
+    private fun messages(fromId: Long, toId: Long) = (fromId until toId).map { message(it) }
+
+    private fun openStore(directory: File) =
+        MessageStore(directory, segmentSize = 512, indexInterval = 4)
+
+    @Test
+    fun appendAndRead() {
+        val store = openStore(folder.root)
+        store.appendAll(messages(1, 1001))
+        assertThat(store.lastId).isEqualTo(1000L)
+        assertThat(store.segmentCount).isGreaterThan(1)
+        assertThat(store.read(1, 1001)).isEqualTo(messages(1, 1001))
+        assertThat(store.read(333, 345)).isEqualTo(messages(333, 345))
+        assertThat(store[1000]).isEqualTo(message(1000))
+    }
+
+    @Test
+    fun appendAllSkipsStoredMessages() {
+        val store = openStore(folder.root)
+        store.appendAll(messages(1, 11))
+        store.appendAll(messages(5, 21))
+        store.appendAll(messages(1, 8))
+        assertThat(store.read(1, 21)).isEqualTo(messages(1, 21))
+    }
+
+    @Test
+    fun reopen() {
+        openStore(folder.root).use { it.appendAll(messages(1, 301)) }
+        val store = openStore(folder.root)
+        assertThat(store.firstId).isEqualTo(1L)
+        assertThat(store.lastId).isEqualTo(300L)
+        store.appendAll(messages(301, 311))
+        assertThat(store.read(290, 311)).isEqualTo(messages(290, 311))
+    }
+
+    @Test
+    fun truncatedRecordIsDropped() {
+        // The store isn't closed, like when the process is killed.
+        openStore(folder.root).appendAll(messages(1, 11))
+        val segment = folder.root.listFiles { file -> file.name.endsWith(".seg") }!!.single()
+        RandomAccessFile(segment, "rw").use { it.setLength(it.length() - 3) }
+
+        val store = openStore(folder.root)
+        assertThat(store.lastId).isEqualTo(9L)
+        assertThat(store.read(1, 10)).isEqualTo(messages(1, 10))
+        store.appendAll(messages(1, 13))
+        assertThat(openStore(folder.root).read(1, 13)).isEqualTo(messages(1, 13))
+    }
+
+    @Test
+    fun compact() {
+        for (start in 1L..46L step 5) {
+            openStore(folder.root).use { it.appendAll(messages(start, start + 5)) }
+        }
+        val store = openStore(folder.root)
+        assertThat(store.segmentCount).isEqualTo(10)
+        store.compact()
+        assertThat(store.segmentCount).isLessThan(10)
+        assertThat(store.read(1, 51)).isEqualTo(messages(1, 51))
+        store.close()
+        assertThat(openStore(folder.root).read(1, 51)).isEqualTo(messages(1, 51))
+    }
+
+    @Test
+    fun interruptedCompaction() {
+        for (start in 1L..6L step 5) {
+            openStore(folder.root).use { it.appendAll(messages(start, start + 5)) }
+        }
+        val second = File(folder.root, "6.seg")
+        val bytes = second.readBytes()
+        openStore(folder.root).use { it.compact() }
+        // The merged segment was renamed, but the process was killed before the second segment
+        // was deleted.
+        second.writeBytes(bytes)
+
+        val store = openStore(folder.root)
+        assertThat(store.segmentCount).isEqualTo(1)
+        assertThat(store.read(1, 11)).isEqualTo(messages(1, 11))
+        assertThat(second.exists()).isFalse()
+    }
+
+    @Test
+    fun interruptedRename() {
+        openStore(folder.root).use { it.appendAll(messages(1, 11)) }
+        // The process was killed while writing a merged segment and an index.
+        val segment = File(folder.root, "1.seg.tmp").apply { writeBytes(byteArrayOf(1, 2, 3)) }
+        val index = File(folder.root, "1.idx.tmp").apply { writeBytes(byteArrayOf(4)) }
+
+        val store = openStore(folder.root)
+        assertThat(store.read(1, 11)).isEqualTo(messages(1, 11))
+        assertThat(segment.exists()).isFalse()
+        assertThat(index.exists()).isFalse()
+    }
+
+    @Test
+    fun coldStart() {
+        val count = 200_000L
+        MessageStore(folder.root).use { store ->
+            for (start in 1L..count step 1000) {
+                store.appendAll(messages(start, start + 1000))
+            }
+        }
+        val store = MessageStore(folder.root)
+        assertThat(store.lastId).isEqualTo(count)
+        assertThat(store.read(count - 49, count + 1)).isEqualTo(messages(count - 49, count + 1))
+        assertThat(store[123_456]).isEqualTo(message(123_456))
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class NotificationCoalescerTest {
+
+    private var now = 0L
+
+    private val scheduler = ReplyScheduler({ now }, { it.run() }, tickMillis = 10)
+
+    private val posts = mutableListOf<Pair<Long, Boolean>>()
+
+    private val coalescer = NotificationCoalescer(scheduler, windowMillis = 100) { chat, update ->
+        posts.add(chat.contact.id to update)
+    }
+
+    private val chats = Contact.CONTACTS.map { Chat(it) }
+
+    private fun advanceBy(millis: Long) {
+        now += millis
+        scheduler.runDueTasks()
+    }
+
+    @Test
+    fun burstIsPostedOncePerChat() {
+        repeat(30) { i -> coalescer.request(chats[i % 3], true) }
+        advanceBy(99)
+        assertThat(posts).isEmpty()
+        advanceBy(1)
+        assertThat(posts.map { it.first }).containsExactly(1L, 2L, 3L)
+        assertThat(coalescer.requestedCount).isEqualTo(30)
+        assertThat(coalescer.postedCount).isEqualTo(3)
+    }
+
+    @Test
+    fun alertsIfAnyRequestAlerts() {
+        coalescer.request(chats[0], true)
+        coalescer.request(chats[0], false)
+        coalescer.request(chats[0], true)
+        coalescer.request(chats[1], true)
+        advanceBy(100)
+        assertThat(posts).containsExactly(1L to false, 2L to true)
+    }
+
+    @Test
+    fun requestAfterPostStartsNewWindow() {
+        coalescer.request(chats[0], false)
+        advanceBy(100)
+        coalescer.request(chats[0], false)
+        advanceBy(50)
+        assertThat(posts).hasSize(1)
+        advanceBy(50)
+        assertThat(posts).hasSize(2)
+        assertThat(coalescer.postedCount).isEqualTo(2)
+    }
+
+    @Test
+    fun cancelDropsPendingNotification() {
+        coalescer.request(chats[0], false)
+        coalescer.request(chats[1], false)
+        coalescer.cancel(1L)
+        coalescer.cancel(3L)
+        advanceBy(100)
+        assertThat(posts).containsExactly(2L to false)
+        // Only the pending notification is dropped.
+        coalescer.request(chats[0], false)
+        advanceBy(100)
+        assertThat(posts.last()).isEqualTo(1L to false)
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.data
+
+import com.google.common.truth.Truth.assertThat
+import java.util.Random
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import org.junit.Test
+
+class ReplySchedulerTest {
+
+    private var now = 1_000L
+
+    private val ran = mutableListOf<Pair<Int, Long>>()
+
+    private val scheduler = ReplyScheduler({ now }, { it.run() }, tickMillis = 10, wheelSize = 64)
+
+    private fun schedule(id: Int, delayMillis: Long) {
+        scheduler.schedule(delayMillis) { ran.add(id to now) }
+    }
+
+    private fun advanceBy(millis: Long, step: Long = 1) {
+        val end = now + millis
+        while (now < end) {
+            now = minOf(now + step, end)
+            scheduler.runDueTasks()
+        }
+    }
+
+    @Test
+    fun runsAfterDelay() {
+        schedule(1, 5000)
+        advanceBy(4999)
+        assertThat(ran).isEmpty()
+        advanceBy(1)
+        assertThat(ran).containsExactly(1 to 6000L)
+        assertThat(scheduler.pendingCount).isEqualTo(0)
+    }
+
+    @Test
+    fun sameDeadlineRunsInScheduleOrder() {
+        repeat(100) { schedule(it, 50) }
+        advanceBy(50)
+        assertThat(ran.map { it.first }).isEqualTo((0 until 100).toList())
+    }
+
+    @Test
+    fun dueTasksRunInDeadlineOrder() {
+        schedule(1, 9)
+        schedule(2, 3)
+        schedule(3, 6)
+        // All three are due at the same tick.
+        advanceBy(10, step = 10)
+        assertThat(ran.map { it.first }).containsExactly(2, 3, 1).inOrder()
+    }
+
+    @Test
+    fun delayLongerThanWheel() {
+        // The wheel turns once every 640 milliseconds.
+        schedule(1, 2000)
+        schedule(2, 640)
+        advanceBy(1999)
+        assertThat(ran.map { it.first }).containsExactly(2)
+        advanceBy(1)
+        assertThat(ran.map { it.first }).containsExactly(2, 1).inOrder()
+    }
+
+    @Test
+    fun idleTime() {
+        advanceBy(100_000, step = 1000)
+        schedule(1, 20)
+        advanceBy(20)
+        assertThat(ran).containsExactly(1 to now)
+    }
+
+    @Test
+    fun manyPendingReplies() {
+        val random = Random(42)
+        val deadlines = mutableMapOf<Int, Long>()
+        // Replies are sent while earlier ones are still pending.
+        repeat(10_000) { id ->
+            val delay = 5000L + random.nextInt(3000)
+            deadlines[id] = now + delay
+            schedule(id, delay)
+            if (id % 10 == 0) {
+                advanceBy(1)
+            }
+        }
+        assertThat(scheduler.pendingCount).isGreaterThan(1000)
+        advanceBy(10_000, step = 7)
+
+        // Every reply ran once, never early, less than a tick late, and in the order of deadlines.
+        assertThat(ran.map { it.first }.toSet()).hasSize(10_000)
+        assertThat(ran).hasSize(10_000)
+        for ((id, time) in ran) {
+            assertThat(time).isAtLeast(deadlines.getValue(id))
+            assertThat(time - deadlines.getValue(id)).isLessThan(10 + 7)
+        }
+        assertThat(ran.map { deadlines.getValue(it.first) }).isInOrder()
+    }
+
+    @Test
+    fun stopAndStartAgain() {
+        val ran = LinkedBlockingQueue<Int>()
+        val scheduler = ReplyScheduler({ System.nanoTime() / 1_000_000 }, { it.run() }, 10)
+        scheduler.start()
+        scheduler.schedule(0) { ran.add(1) }
+        assertThat(ran.poll(5, TimeUnit.SECONDS)).isEqualTo(1)
+        scheduler.stop()
+        scheduler.schedule(0) { ran.add(2) }
+        // Nothing advances the wheel until it is started again.
+        assertThat(ran.poll(100, TimeUnit.MILLISECONDS)).isNull()
+        assertThat(scheduler.pendingCount).isEqualTo(1)
+        scheduler.start()
+        assertThat(ran.poll(5, TimeUnit.SECONDS)).isEqualTo(2)
+        scheduler.stop()
+    }
+}
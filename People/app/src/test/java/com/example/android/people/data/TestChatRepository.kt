@@ -26,6 +26,8 @@ import androidx.lifecycle.MutableLiveData
  */
 class TestChatRepository(private val chats: Map<Long, Chat>) : ChatRepository {
 
+    private val directory = ContactDirectory()
+
     var activatedId = 0L
 
     var bubbleId = 0L
@@ -38,7 +40,23 @@ class TestChatRepository(private val chats: Map<Long, Chat>) : ChatRepository {
 
     override fun findContact(id: Long): LiveData<Contact?> {
         return MutableLiveData<Contact>().apply {
-            value = Contact.CONTACTS.find { it.id == id }
+            value = directory[id]
+        }
+    }
+
+    override fun searchContacts(prefix: String): LiveData<List<Contact>> {
+        return MutableLiveData<List<Contact>>().apply {
+            value = directory.search(prefix)
+        }
+    }
+
+    override fun searchMessages(query: String): LiveData<List<MessageRange>> {
+        val index = MessageIndex()
+        for (chat in chats.values) {
+            chat.messages.forEach { index.add(chat.contact.id, it) }
+        }
+        return MutableLiveData<List<MessageRange>>().apply {
+            value = index.search(query)
         }
     }
 
@@ -61,6 +79,12 @@ class TestChatRepository(private val chats: Map<Long, Chat>) : ChatRepository {
         }
     }
 
+    override fun findMessagePages(id: Long): LiveData<MessagePagingSource> {
+        return MutableLiveData<MessagePagingSource>().apply {
+            value = ChatPagingSource(chats.getValue(id), null)
+        }
+    }
+
     override fun sendMessage(id: Long, text: String, photoUri: Uri?, photoMimeType: String?) {
         val chat = chats.getValue(id)
         chat.addMessage(Message.Builder().apply {
@@ -16,12 +16,14 @@
 package com.example.android.people.ui.chat
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule
+import androidx.lifecycle.Observer
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.filters.SmallTest
 import androidx.test.platform.app.InstrumentationRegistry
 import com.example.android.people.data.Chat
 import com.example.android.people.data.Contact
+import com.example.android.people.data.MessageDelta
 import com.example.android.people.data.TestChatRepository
 import com.example.android.people.observedValue
 import com.google.common.truth.Truth.assertThat
@@ -71,6 +73,30 @@ class ChatViewModelTest {
         assertThat(messages[3].text).isEqualTo("Meow")
     }
 
+    @Test
+    fun messageDeltas() {
+        viewModel.setChatId(1L)
+        val deltas = mutableListOf<MessageDelta>()
+        val observer = Observer<MessageDelta> { deltas.add(it) }
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            viewModel.messageDeltas.observeForever(observer)
+        }
+        viewModel.send("a")
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            viewModel.messageDeltas.removeObserver(observer)
+        }
+        assertThat(deltas.first().start).isEqualTo(0)
+        assertThat(deltas.first().messages).hasSize(2)
+        // Every delta starts where the previous one ended.
+        deltas.zipWithNext { previous, next ->
+            assertThat(next.start).isEqualTo(previous.messages.size)
+            assertThat(next.count).isGreaterThan(0)
+        }
+        assertThat(deltas.last().messages.map { it.text }).containsExactly(
+            "Send me a message", "I will reply in 5 seconds", "a", "Meow"
+        ).inOrder()
+    }
+
     @Test
     fun showAsBubble() {
         viewModel.setChatId(1L)
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.ui.chat
+
+import android.os.Looper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.example.android.people.data.Message
+import com.example.android.people.data.MessagePagingSource
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Shadows.shadowOf
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class MessagePagerTest {
+
+    private val loads = mutableListOf<Long>()
+
+    private val source = object : MessagePagingSource {
+        override val firstId = 1L
+
+        override fun load(fromId: Long, toId: Long): List<Message> {
+            loads.add(fromId)
+            return (fromId until minOf(toId, 1001L)).map { id ->
+                Message(id, 1L, "Message $id", null, null, id)
+            }
+        }
+    }
+
+    private val loaded = mutableListOf<Pair<Long, Int>>()
+
+    private fun createPager() = MessagePager(source, { it.run() }, pageSize = 10, maxPages = 3)
+        .apply { onPageLoaded = { fromId, count -> loaded.add(fromId to count) } }
+
+    private fun idle() = shadowOf(Looper.getMainLooper()).idle()
+
+    @Test
+    fun loadsPageOnDemand() {
+        val pager = createPager()
+        assertThat(pager[995]).isNull()
+        idle()
+        assertThat(loaded).containsExactly(991L to 10)
+        assertThat(pager[995]?.text).isEqualTo("Message 995")
+        assertThat(pager[1000]?.id).isEqualTo(1000L)
+    }
+
+    @Test
+    fun prefetchesOlderPage() {
+        val pager = createPager()
+        pager[992]
+        idle()
+        // The message is in the older half of its page.
+        pager[992]
+        idle()
+        assertThat(loads).containsExactly(991L, 981L).inOrder()
+        assertThat(pager[985]).isNotNull()
+    }
+
+    @Test
+    fun dropsPagesFarFromScreen() {
+        val pager = createPager()
+        for (id in 1000L downTo 951L) {
+            pager[id]
+            idle()
+        }
+        loads.clear()
+        // Only the last pages that were used are kept.
+        assertThat(pager[955]).isNotNull()
+        assertThat(pager[1000]).isNull()
+        assertThat(loads).contains(991L)
+    }
+
+    @Test
+    fun loadsPageOnce() {
+        val pager = createPager()
+        pager[995]
+        pager[996]
+        idle()
+        assertThat(loads).containsExactly(991L)
+    }
+}
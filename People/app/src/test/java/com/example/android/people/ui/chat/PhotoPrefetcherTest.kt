@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.people.ui.chat
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class PhotoPrefetcherTest {
+
+    private fun positions(first: Int, last: Int, dy: Int, itemCount: Int = 100) =
+        PhotoPrefetcher.prefetchPositions(
+            first, last, dy, rowHeight = 100, itemCount = itemCount, minRows = 4, maxRows = 16
+        )
+
+    @Test
+    fun scrollDown_prefetchesBelow() {
+        assertThat(positions(10, 15, dy = 5)).containsExactly(16, 17, 18, 19).inOrder()
+    }
+
+    @Test
+    fun scrollUp_prefetchesAbove() {
+        assertThat(positions(10, 15, dy = -5)).containsExactly(9, 8, 7, 6).inOrder()
+    }
+
+    @Test
+    fun fastScroll_looksFurtherAhead() {
+        assertThat(positions(10, 15, dy = 50)).hasSize(9)
+        assertThat(positions(10, 15, dy = 1000)).hasSize(16)
+    }
+
+    @Test
+    fun edges_stayInRange() {
+        assertThat(positions(95, 98, dy = 5)).containsExactly(99)
+        assertThat(positions(0, 5, dy = -5)).isEmpty()
+    }
+}
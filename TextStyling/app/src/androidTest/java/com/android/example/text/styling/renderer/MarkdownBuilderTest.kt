@@ -21,13 +21,20 @@ import androidx.core.content.ContextCompat
 import android.text.style.LeadingMarginSpan
 import android.text.style.RelativeSizeSpan
 import android.text.style.StyleSpan
+import android.widget.TextView
 import com.android.example.text.styling.R
 import com.android.example.text.styling.getColorCompat
 import com.android.example.text.styling.parser.Parser
 import com.android.example.text.styling.renderer.spans.BulletPointSpan
 import com.android.example.text.styling.renderer.spans.CodeBlockSpan
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
 import org.junit.Test
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * Tests for [MarkdownBuilder] class
@@ -98,4 +105,90 @@ class MarkdownBuilderTest {
         assertEquals(5, result.getSpanStart(codeSpan).toLong())
         assertEquals(9, result.getSpanEnd(codeSpan).toLong())
     }
-}
\ No newline at end of file
+
+    @Test fun flatMarkdown() {
+        val text = "Text\n> Quote\n* one `code`\n+ * two"
+        val expected = builder.markdownToSpans(text)
+
+        val result = builder.markdownToSpans(Parser.parseFlat(text))
+
+        assertEquals(expected.toString(), result.toString())
+        val expectedSpans = expected.getSpans<Any>(0, expected.length, Any::class.java)
+        val spans = result.getSpans<Any>(0, result.length, Any::class.java)
+        assertEquals(expectedSpans.size.toLong(), spans.size.toLong())
+        for (i in spans.indices) {
+            assertEquals(expectedSpans[i].javaClass, spans[i].javaClass)
+            assertEquals(expected.getSpanStart(expectedSpans[i]), result.getSpanStart(spans[i]))
+            assertEquals(expected.getSpanEnd(expectedSpans[i]), result.getSpanEnd(spans[i]))
+            assertEquals(expected.getSpanFlags(expectedSpans[i]), result.getSpanFlags(spans[i]))
+        }
+    }
+
+    @Test fun adjacentQuotesShareSpans() {
+        val result = builder.markdownToSpans("> one\n> two\nText")
+
+        assertEquals("one\ntwo\nText", result.toString())
+        val spans = result.getSpans<Any>(0, result.length, Any::class.java)
+        assertEquals(3, spans.size.toLong())
+        for (span in spans) {
+            assertEquals(0, result.getSpanStart(span).toLong())
+            assertEquals(8, result.getSpanEnd(span).toLong())
+        }
+        assertEquals(SpanStats(6, 3, 3), builder.lastSpanStats)
+    }
+
+    @Test fun spansReusedBetweenRenders() {
+        val first = builder.markdownToSpans("* one `code`\n* two")
+        val second = builder.markdownToSpans("* three\n* `four`")
+
+        val firstSpans = first.getSpans<BulletPointSpan>(0, first.length,
+                BulletPointSpan::class.java)
+        val secondSpans = second.getSpans<BulletPointSpan>(0, second.length,
+                BulletPointSpan::class.java)
+        assertEquals(2, secondSpans.size.toLong())
+        assertNotSame(secondSpans[0], secondSpans[1])
+        assertSame(firstSpans[0], secondSpans[0])
+        assertSame(firstSpans[1], secondSpans[1])
+        assertSame(first.getSpans<CodeBlockSpan>(0, first.length, CodeBlockSpan::class.java)[0],
+                second.getSpans<CodeBlockSpan>(0, second.length, CodeBlockSpan::class.java)[0])
+        assertEquals(SpanStats(3, 3, 0), builder.lastSpanStats)
+        assertEquals(3, builder.lastSpanStats.spansSaved.toLong())
+    }
+
+    @Test fun renderOnBackgroundThread() {
+        val instrumentation = InstrumentationRegistry.getInstrumentation()
+        val executor = Executors.newSingleThreadExecutor()
+        lateinit var textView: TextView
+        lateinit var render: Future<*>
+        instrumentation.runOnMainSync {
+            textView = TextView(context)
+            render = builder.markdownToSpans("Text\n> Quote", textView, executor)
+        }
+
+        render.get()
+        instrumentation.waitForIdleSync()
+
+        assertEquals("Text\nQuote", textView.text.toString())
+        executor.shutdown()
+    }
+
+    @Test fun cancelledRenderIsNotSet() {
+        val instrumentation = InstrumentationRegistry.getInstrumentation()
+        val pending = mutableListOf<Runnable>()
+        val executor = Executor { pending.add(it) }
+        lateinit var textView: TextView
+        lateinit var first: Future<*>
+        instrumentation.runOnMainSync {
+            textView = TextView(context)
+            first = builder.markdownToSpans("first", textView, executor)
+            // a new render for the same view cancels the first one
+            builder.markdownToSpans("second", textView, executor)
+        }
+
+        pending.forEach { it.run() }
+        instrumentation.waitForIdleSync()
+
+        assertTrue(first.isCancelled)
+        assertEquals("second", textView.text.toString())
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import android.graphics.Typeface
+import androidx.test.InstrumentationRegistry
+import com.android.example.text.styling.R
+import com.android.example.text.styling.getColorCompat
+import com.android.example.text.styling.parser.Parser
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.File
+
+/**
+ * Tests for [MarkdownCache] class
+ */
+class MarkdownCacheTest {
+
+    private val context = InstrumentationRegistry.getTargetContext()
+    private val bulletPointColor = context.getColorCompat(R.color.colorAccent)
+    private val codeBackgroundColor = context.getColorCompat(R.color.code_background)
+    private val directory = File(context.cacheDir, "markdown-cache-test")
+
+    private fun builder(cache: MarkdownCache, typeface: Typeface = Typeface.DEFAULT) =
+            MarkdownBuilder(bulletPointColor, codeBackgroundColor, typeface, Parser, cache)
+
+    @After fun tearDown() {
+        directory.deleteRecursively()
+    }
+
+    @Test fun hitAndMiss() {
+        val cache = MarkdownCache(1024 * 1024)
+        val builder = builder(cache)
+
+        val first = builder.markdownToSpans("Text `code`")
+        val second = builder.markdownToSpans("Text `code`")
+
+        assertSame(first, second)
+        assertEquals(1, cache.missCount)
+        assertEquals(1, cache.hitCount)
+    }
+
+    @Test fun styleIsPartOfTheKey() {
+        val cache = MarkdownCache(1024 * 1024)
+
+        val first = builder(cache).markdownToSpans("Text `code`")
+        val second = builder(cache, Typeface.MONOSPACE).markdownToSpans("Text `code`")
+
+        assertNotSame(first, second)
+        assertEquals(2, cache.missCount)
+    }
+
+    @Test fun eviction() {
+        // room for a single text of 10 characters without spans, and for its key
+        val cache = MarkdownCache(50)
+        val builder = builder(cache)
+
+        builder.markdownToSpans("0123456789")
+        builder.markdownToSpans("abcdefghij")
+        builder.markdownToSpans("0123456789")
+
+        assertEquals(2, cache.evictionCount)
+        assertEquals(0, cache.hitCount)
+    }
+
+    @Test fun parsedMarkdownSurvivesRestart() {
+        builder(MarkdownCache(1024 * 1024, directory)).markdownToSpans("> Quote\n* point")
+
+        val cache = MarkdownCache(1024 * 1024, directory)
+        val result = builder(cache).markdownToSpans("> Quote\n* point")
+
+        assertEquals("Quote\npoint", result.toString())
+        assertEquals(1, cache.diskHitCount)
+    }
+
+    @Test fun diskEntriesAreBounded() {
+        val builder = builder(MarkdownCache(1024 * 1024, directory, maxDiskEntries = 2))
+
+        builder.markdownToSpans("one")
+        builder.markdownToSpans("two")
+        builder.markdownToSpans("three")
+
+        assertEquals(2, directory.listFiles().size)
+    }
+}
@@ -20,6 +20,9 @@ import androidx.appcompat.app.AppCompatActivity
 import android.widget.TextView
 import com.android.example.text.styling.parser.Parser
 import com.android.example.text.styling.renderer.MarkdownBuilder
+import com.android.example.text.styling.renderer.MarkdownCache
+import java.io.File
+import java.util.concurrent.Executors
 
 /**
  * This sample demonstrates techniques for stying text; it is not intended to be a full markdown
@@ -27,6 +30,9 @@ import com.android.example.text.styling.renderer.MarkdownBuilder
  */
 class MainActivity : AppCompatActivity() {
 
+    // parsing and rendering happen on this thread, so the UI thread only sets the result
+    private val renderExecutor = Executors.newSingleThreadExecutor()
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
@@ -40,8 +46,25 @@ class MainActivity : AppCompatActivity() {
         val codeBackgroundColor = getColorCompat(R.color.code_background)
         val codeBlockTypeface = getFontCompat(R.font.inconsolata)
 
-        MarkdownBuilder(bulletPointColor, codeBackgroundColor, codeBlockTypeface, Parser)
-                .markdownToSpans(getString(R.string.display_text))
-                .run { findViewById<TextView>(R.id.styledText).text = this }
+        val cache = markdownCache
+                ?: MarkdownCache(MARKDOWN_CACHE_SIZE, File(cacheDir, MARKDOWN_CACHE_DIRECTORY))
+                        .also { markdownCache = it }
+
+        MarkdownBuilder(bulletPointColor, codeBackgroundColor, codeBlockTypeface, Parser, cache)
+                .markdownToSpans(getString(R.string.display_text),
+                        findViewById<TextView>(R.id.styledText), renderExecutor)
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        renderExecutor.shutdownNow()
+    }
+
+    companion object {
+        private const val MARKDOWN_CACHE_SIZE = 1024 * 1024
+        private const val MARKDOWN_CACHE_DIRECTORY = "markdown"
+
+        // kept across configuration changes, and on disk across cold starts
+        private var markdownCache: MarkdownCache? = null
     }
 }
\ No newline at end of file
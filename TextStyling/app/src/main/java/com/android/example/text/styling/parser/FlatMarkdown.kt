@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+/**
+ * Compact version of [TextMarkdown]. Instead of an [Element] holding a copy of its text, every
+ * element is an index in arrays of primitives holding its type, where its text starts and ends
+ * in [source] and the index of the bullet point it is nested in.
+ *
+ * Elements are ordered as they appear in the text, so a bullet point comes right before the
+ * elements nested in it.
+ */
+class FlatMarkdown internal constructor(
+        val source: String,
+        val size: Int,
+        private val types: IntArray,
+        private val starts: IntArray,
+        private val ends: IntArray,
+        private val parents: IntArray
+) {
+
+    fun type(index: Int): Element.Type = TYPES[types[index]]
+
+    fun start(index: Int) = starts[index]
+
+    fun end(index: Int) = ends[index]
+
+    /**
+     * Index of the bullet point the element is nested in, or [NO_PARENT] for top level elements.
+     */
+    fun parent(index: Int) = parents[index]
+
+    /**
+     * Report all the elements to [sink], in order, without allocating.
+     */
+    fun accept(sink: MarkdownSink) {
+        // the bullet point being reported, whose elements are reported until an element has
+        // another parent
+        var bulletPoint = NO_PARENT
+        for (index in 0 until size) {
+            val parent = parents[index]
+            while (bulletPoint != parent) {
+                sink.endBulletPoint(ends[bulletPoint])
+                bulletPoint = parents[bulletPoint]
+            }
+            when (types[index]) {
+                TEXT -> sink.text(starts[index], ends[index])
+                QUOTE -> sink.quote(starts[index], ends[index])
+                CODE_BLOCK -> sink.codeBlock(starts[index], ends[index])
+                BULLET_POINT -> {
+                    sink.startBulletPoint(starts[index])
+                    bulletPoint = index
+                }
+            }
+        }
+        while (bulletPoint != NO_PARENT) {
+            sink.endBulletPoint(ends[bulletPoint])
+            bulletPoint = parents[bulletPoint]
+        }
+    }
+
+    /**
+     * Build the [TextMarkdown] with the same elements.
+     */
+    fun toTextMarkdown(): TextMarkdown {
+        val elements = mutableListOf<Element>()
+        accept(ElementTreeBuilder(source, elements))
+        return TextMarkdown(elements)
+    }
+
+    companion object {
+        const val NO_PARENT = -1
+
+        private val TYPES = Element.Type.values()
+        internal val TEXT = Element.Type.TEXT.ordinal
+        internal val QUOTE = Element.Type.QUOTE.ordinal
+        internal val BULLET_POINT = Element.Type.BULLET_POINT.ordinal
+        internal val CODE_BLOCK = Element.Type.CODE_BLOCK.ordinal
+    }
+}
+
+/**
+ * Builds a [FlatMarkdown] from the elements reported to it.
+ */
+internal class FlatMarkdownBuilder(private val source: String) : MarkdownSink {
+
+    private var size = 0
+    private var types = IntArray(INITIAL_CAPACITY)
+    private var starts = IntArray(INITIAL_CAPACITY)
+    private var ends = IntArray(INITIAL_CAPACITY)
+    private var parents = IntArray(INITIAL_CAPACITY)
+
+    // the innermost bullet point that is not closed yet
+    private var bulletPoint = FlatMarkdown.NO_PARENT
+
+    override fun text(start: Int, end: Int) {
+        add(FlatMarkdown.TEXT, start, end)
+    }
+
+    override fun quote(start: Int, end: Int) {
+        add(FlatMarkdown.QUOTE, start, end)
+    }
+
+    override fun codeBlock(start: Int, end: Int) {
+        add(FlatMarkdown.CODE_BLOCK, start, end)
+    }
+
+    override fun startBulletPoint(start: Int) {
+        // the end is only known once the bullet point is closed
+        bulletPoint = add(FlatMarkdown.BULLET_POINT, start, start)
+    }
+
+    override fun endBulletPoint(end: Int) {
+        ends[bulletPoint] = end
+        bulletPoint = parents[bulletPoint]
+    }
+
+    fun build() = FlatMarkdown(source, size, types, starts, ends, parents)
+
+    private fun add(type: Int, start: Int, end: Int): Int {
+        if (size == types.size) {
+            val capacity = size * 2
+            types = types.copyOf(capacity)
+            starts = starts.copyOf(capacity)
+            ends = ends.copyOf(capacity)
+            parents = parents.copyOf(capacity)
+        }
+        types[size] = type
+        starts[size] = start
+        ends[size] = end
+        parents[size] = bulletPoint
+        return size++
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 16
+    }
+}
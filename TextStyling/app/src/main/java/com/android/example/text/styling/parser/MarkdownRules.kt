@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import java.util.Arrays
+
+/**
+ * Mark that starts a markdown element. The [kind] of the rule decides where the mark is
+ * recognized, and where the element ends.
+ */
+data class MarkdownRule(val mark: String, val kind: Kind) {
+
+    enum class Kind {
+        /**
+         * Block mark, at the beginning of a line. The rest of the paragraph is a quote, that
+         * can't contain other elements.
+         */
+        QUOTE,
+        /**
+         * Block mark, at the beginning of a line. The rest of the paragraph is a bullet point,
+         * that can contain code blocks. Marks following each other make nested bullet points.
+         */
+        BULLET_POINT,
+        /**
+         * Inline mark. The text until the same mark is a code block.
+         */
+        CODE_BLOCK
+    }
+}
+
+/**
+ * Rules used to find the markdown elements of a text.
+ *
+ * The marks of all the rules are compiled into a single automaton: a transition table indexed by
+ * state and character, that finds which mark, if any, starts at a position of the text by
+ * reading every character at most once. Characters that can't start a mark are rejected by the
+ * first lookup.
+ *
+ * Marks can't contain line terminators, and all the marks of a [MarkdownRule.Kind] have the
+ * same length, so that the length of an element in the text is known from its content.
+ *
+ * Most characters start at most one mark, as with the [DEFAULT] rules, so the rule that a
+ * character starts is also kept by character: its mark is then compared directly with the text,
+ * and the automaton only runs from characters that start several marks.
+ */
+class MarkdownRules(val rules: List<MarkdownRule>) {
+
+    internal val quoteMarkLength = markLength(MarkdownRule.Kind.QUOTE)
+    internal val bulletPointMarkLength = markLength(MarkdownRule.Kind.BULLET_POINT)
+    internal val codeBlockMarkLength = markLength(MarkdownRule.Kind.CODE_BLOCK)
+
+    // column of the transition table for every character found in a mark, 0 for the others
+    private val asciiColumns = IntArray(ASCII_SIZE)
+    private val otherChars: CharArray
+    private val otherColumns: IntArray
+    private val columnCount: Int
+
+    // for every ASCII character, the only rule whose mark starts with it, NO_RULE if there is none
+    // or MANY_RULES if there are several
+    private val firstCharRules = IntArray(ASCII_SIZE) { NO_RULE }
+
+    // kind bit and mark of every rule, by index
+    internal val ruleKinds = IntArray(rules.size) { 1 shl rules[it].kind.ordinal }
+    internal val ruleMarks = Array(rules.size) { rules[it].mark }
+
+    // next state for every state and column, or NO_STATE; the first state is the initial one
+    private val transitions: IntArray
+    // index of the rule whose mark ends in every state, or NO_RULE
+    private val acceptedRules: IntArray
+    // for every state, the kind bit of the rule whose mark ends there, and FINAL_STATE if no
+    // transition leaves it, so no longer mark can be found from it
+    private val stateFlags: IntArray
+
+    init {
+        require(rules.map { it.mark }.toSet().size == rules.size) { "Marks must be unique" }
+        for (rule in rules) {
+            require(rule.mark.isNotEmpty()) { "Empty mark for ${rule.kind}" }
+            require(rule.mark.none { isLineTerminator(it) }) {
+                "Mark \"${rule.mark}\" contains a line terminator"
+            }
+        }
+
+        // give a column to every character used by a mark
+        val chars = rules.flatMap { it.mark.asIterable() }.toSortedSet()
+        var column = 1
+        val others = mutableListOf<Char>()
+        for (char in chars) {
+            if (char.code < ASCII_SIZE) {
+                asciiColumns[char.code] = column++
+            } else {
+                others.add(char)
+            }
+        }
+        rules.forEachIndexed { ruleIndex, rule ->
+            val first = rule.mark[0].code
+            if (first < ASCII_SIZE) {
+                firstCharRules[first] =
+                        if (firstCharRules[first] == NO_RULE) ruleIndex else MANY_RULES
+            }
+        }
+        otherChars = others.toCharArray()
+        otherColumns = IntArray(others.size) { column++ }
+        columnCount = column
+
+        // build the trie of the marks, then flatten it into the table
+        val trie = mutableListOf(IntArray(columnCount) { NO_STATE })
+        val accepted = mutableListOf(NO_RULE)
+        rules.forEachIndexed { ruleIndex, rule ->
+            var state = 0
+            for (char in rule.mark) {
+                val charColumn = columnOf(char)
+                var next = trie[state][charColumn]
+                if (next == NO_STATE) {
+                    next = trie.size
+                    trie[state][charColumn] = next
+                    trie.add(IntArray(columnCount) { NO_STATE })
+                    accepted.add(NO_RULE)
+                }
+                state = next
+            }
+            accepted[state] = ruleIndex
+        }
+        transitions = IntArray(trie.size * columnCount)
+        trie.forEachIndexed { state, row -> row.copyInto(transitions, state * columnCount) }
+        acceptedRules = accepted.toIntArray()
+        stateFlags = IntArray(trie.size) { state ->
+            val rule = acceptedRules[state]
+            (if (rule == NO_RULE) 0 else ruleKinds[rule]) or
+                    (if (trie[state].all { it == NO_STATE }) FINAL_STATE else 0)
+        }
+    }
+
+    /**
+     * Whether [char] is the first character of a mark. This is the first lookup of [matchAt],
+     * cheap enough to be made for every character of a text.
+     */
+    internal fun isMarkStart(char: Char) = transitions[columnOf(char)] != NO_STATE
+
+    /**
+     * Find the longest mark of a rule whose kind is in [kinds] starting at [index] of [text].
+     *
+     * @param kinds bit set of the [MarkdownRule.Kind] ordinals that are accepted
+     * @return the index of the rule in [rules], or [NO_RULE]
+     */
+    internal fun matchAt(text: String, index: Int, kinds: Int): Int {
+        if (index >= text.length) {
+            return NO_RULE
+        }
+        val first = text[index].code
+        if (first < ASCII_SIZE && firstCharRules[first] != MANY_RULES) {
+            // a single mark to compare, if any
+            val rule = firstCharRules[first]
+            return if (rule != NO_RULE && ruleKinds[rule] and kinds != 0 &&
+                    text.startsWith(ruleMarks[rule], index)) rule else NO_RULE
+        }
+        return matchWithAutomaton(text, index, kinds)
+    }
+
+    /**
+     * [matchAt] with the automaton only.
+     */
+    internal fun matchWithAutomaton(text: String, index: Int, kinds: Int): Int {
+        var match = NO_RULE
+        var state = 0
+        var position = index
+        val end = text.length
+        while (position < end) {
+            val char = text[position++]
+            val column = if (char.code < ASCII_SIZE) asciiColumns[char.code] else otherColumnOf(char)
+            state = transitions[state * columnCount + column]
+            if (state == NO_STATE) {
+                break
+            }
+            val flags = stateFlags[state]
+            if (flags and kinds != 0) {
+                match = acceptedRules[state]
+            }
+            if (flags and FINAL_STATE != 0) {
+                break
+            }
+        }
+        return match
+    }
+
+    /**
+     * Length of the text that [element] was parsed from, marks included.
+     */
+    internal fun sourceLength(element: Element): Int {
+        return when (element.type) {
+            Element.Type.TEXT -> element.text.length
+            Element.Type.QUOTE -> element.text.length + quoteMarkLength
+            Element.Type.BULLET_POINT -> element.text.length + bulletPointMarkLength
+            Element.Type.CODE_BLOCK -> element.text.length + 2 * codeBlockMarkLength
+        }
+    }
+
+    private fun columnOf(char: Char) =
+            if (char.code < ASCII_SIZE) asciiColumns[char.code] else otherColumnOf(char)
+
+    private fun otherColumnOf(char: Char): Int {
+        val index = Arrays.binarySearch(otherChars, char)
+        return if (index >= 0) otherColumns[index] else 0
+    }
+
+    private fun markLength(kind: MarkdownRule.Kind): Int {
+        val lengths = rules.filter { it.kind == kind }.map { it.mark.length }.toSet()
+        require(lengths.size <= 1) { "Marks of $kind must have the same length" }
+        return lengths.firstOrNull() ?: 0
+    }
+
+    companion object {
+
+        /**
+         * Quotes starting with “> ”, bullet points starting with “* ” or “+ ” and code blocks
+         * enclosed in “`”.
+         */
+        @JvmField
+        val DEFAULT = MarkdownRules(listOf(
+                MarkdownRule("> ", MarkdownRule.Kind.QUOTE),
+                MarkdownRule("* ", MarkdownRule.Kind.BULLET_POINT),
+                MarkdownRule("+ ", MarkdownRule.Kind.BULLET_POINT),
+                MarkdownRule("`", MarkdownRule.Kind.CODE_BLOCK)))
+
+        internal const val NO_RULE = -1
+        private const val MANY_RULES = -2
+        // bits of the Kind ordinals, for matchAt
+        internal const val QUOTE = 1 shl 0
+        internal const val BULLET_POINT = 1 shl 1
+        internal const val CODE_BLOCK = 1 shl 2
+
+        private const val NO_STATE = -1
+        private const val FINAL_STATE = 1 shl 30
+        private const val ASCII_SIZE = 128
+
+        internal fun isLineTerminator(char: Char) =
+                char == '\n' || char == '\r' || char == '\u0085' || char == '\u2028' ||
+                        char == '\u2029'
+    }
+}
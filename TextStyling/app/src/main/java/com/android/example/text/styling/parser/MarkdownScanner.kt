@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+/**
+ * Hand-written scanner that finds the same elements as the regex based parsing in [Parser], but
+ * visits every character of the text only once and doesn't use any regex. The elements are
+ * reported to a [MarkdownSink], in the order they appear in the text.
+ *
+ * The regex implementation looks for marks with a [java.util.regex.Matcher] and then parses
+ * the text found between two marks again, on a `subSequence` of the text. Here, the text is
+ * scanned from left to right and everything that the regex implementation learns by re-scanning
+ * a slice (where a bullet point ends, whether a code block is closed) is found on the way.
+ *
+ * Lines are considered to start where a multiline `^` would match: at the beginning of the text
+ * and after `\n`, `\r`, `\u0085`, `\u2028` or `\u2029`.
+ *
+ * The marks are found with the automaton compiled by [MarkdownRules], that recognizes the marks of
+ * all the rules at once.
+ *
+ * The source is scanned as if it ended at [length]. The elements before the last resync point
+ * reached are the same as with the whole source, so a part of a text can be scanned up to the
+ * beginning of a line and the elements after its last resync point dropped.
+ */
+internal class MarkdownScanner(
+        private val source: String,
+        private val lineSeparator: String,
+        private val rules: MarkdownRules,
+        private val sink: MarkdownSink,
+        private val length: Int = source.length
+) {
+
+    // current position of the scanner in the source
+    private var position = 0
+
+    /**
+     * Scan the whole source.
+     */
+    fun scan() {
+        scan(0) { false }
+    }
+
+    /**
+     * Scan the source from [start].
+     *
+     * [start] must be the beginning of the source or a [resync point][isResyncPoint] of the
+     * elements scanned before it. Every time the scan reaches a resync point, [shouldStop] is
+     * called with its position and the scan stops if it returns true.
+     *
+     * @return the position where the scan stopped
+     */
+    fun scan(start: Int, shouldStop: (Int) -> Boolean): Int {
+        position = start
+        while (position < length) {
+            val resync: Boolean
+            if (isQuoteAt(position)) {
+                // a quote can only be a paragraph long, so look for end of line
+                val quoteStart = position + rules.quoteMarkLength
+                val end = findEndOfParagraph(quoteStart)
+                sink.quote(quoteStart, end)
+                position = end
+                resync = endsWithLineSeparator(quoteStart, end)
+            } else {
+                // everything until the next quote is parsed for bullet points and code blocks
+                val bulletPointStart = scanContent(false)
+                resync = bulletPointStart >= 0 && endsWithLineSeparator(bulletPointStart, position)
+            }
+            if (resync && shouldStop(position)) {
+                break
+            }
+        }
+        return position
+    }
+
+    /**
+     * Scan the elements starting at the current position.
+     *
+     * The content always ends before a quote or at the end of the source. When [isBulletPoint]
+     * is true, the content also ends after the first line separator. Otherwise, the content
+     * ends after the first bullet point that starts a line.
+     *
+     * @return where the text of the bullet point ending the content starts, or -1 if the content
+     * doesn't end with a bullet point that starts a line
+     */
+    private fun scanContent(isBulletPoint: Boolean): Int {
+        // start of the text that wasn't added as an element yet
+        var lastStartIndex = position
+        // a bullet point mark directly following a code block
+        var pendingBulletPoint = -1
+        // first line separator found after the pending bullet point mark
+        var separatorIndex = -1
+        var index = position
+
+        while (index < length) {
+            // block marks are only recognized at the beginning of a line
+            val rule = if (!rules.isMarkStart(source[index])) {
+                MarkdownRules.NO_RULE
+            } else {
+                rules.matchAt(source, index,
+                        if (isLineStart(index)) ALL_KINDS else MarkdownRules.CODE_BLOCK)
+            }
+            if (rule != MarkdownRules.NO_RULE) {
+                when (rules.ruleKinds[rule]) {
+                    MarkdownRules.QUOTE -> break
+                    MarkdownRules.CODE_BLOCK -> {
+                        addText(lastStartIndex, pendingBulletPoint, separatorIndex, index)
+                        pendingBulletPoint = -1
+                        val mark = rules.ruleMarks[rule]
+                        val markEnd = findEndOfCodeBlock(index + mark.length, mark, isBulletPoint)
+                        if (markEnd < 0) {
+                            // we don't have an end of code block so this is just text
+                            position = -markEnd - 1
+                            sink.text(index, position)
+                            return -1
+                        }
+                        sink.codeBlock(index + mark.length, markEnd)
+                        // skip the closing mark of the code block
+                        index = markEnd + mark.length
+                        lastStartIndex = index
+                        if (isBulletPointMarkAt(index)) {
+                            // this is not the beginning of a line, but it becomes a bullet point
+                            // if another mark is found later on, so decide once that mark is
+                            // reached
+                            pendingBulletPoint = index
+                            separatorIndex = -1
+                            index += rules.bulletPointMarkLength
+                        }
+                        continue
+                    }
+                    MarkdownRules.BULLET_POINT -> {
+                        addText(lastStartIndex, pendingBulletPoint, separatorIndex, index)
+                        position = index
+                        // a nested bullet point ends where this one ends and, at the top level,
+                        // nothing that follows a bullet point depends on the text before it
+                        scanBulletPoint()
+                        return index + rules.bulletPointMarkLength
+                    }
+                }
+            }
+            if (source.startsWith(lineSeparator, index)) {
+                if (isBulletPoint) {
+                    index += lineSeparator.length
+                    break
+                }
+                if (pendingBulletPoint >= 0 && separatorIndex < 0) {
+                    separatorIndex = index
+                }
+            }
+            index++
+        }
+
+        // check if there's any more text left
+        if (lastStartIndex < index) {
+            sink.text(lastStartIndex, index)
+        }
+        position = index
+        return -1
+    }
+
+    /**
+     * Scan a bullet point whose mark starts at the current position. The bullet point contains
+     * everything until the end of the paragraph.
+     */
+    private fun scanBulletPoint() {
+        // every bullet point mark directly following another one is a nested bullet point
+        var depth = 0
+        var index = position
+        do {
+            sink.startBulletPoint(index + rules.bulletPointMarkLength)
+            depth++
+            index += rules.bulletPointMarkLength
+        } while (isBulletPointMarkAt(index))
+        position = index
+        scanContent(true)
+        repeat(depth) { sink.endBulletPoint(position) }
+    }
+
+    /**
+     * Add the text between [start] and [end] as an element. If a bullet point mark was found at
+     * [start], the text is a bullet point that ends at [end] or after [separatorIndex].
+     */
+    private fun addText(start: Int, bulletPoint: Int, separatorIndex: Int, end: Int) {
+        if (bulletPoint < 0) {
+            if (start < end) {
+                sink.text(start, end)
+            }
+            return
+        }
+        val endOfBulletPoint = if (separatorIndex < 0) end else separatorIndex + lineSeparator.length
+        var depth = 0
+        var index = bulletPoint
+        do {
+            sink.startBulletPoint(index + rules.bulletPointMarkLength)
+            depth++
+            index += rules.bulletPointMarkLength
+        } while (index < endOfBulletPoint && isBulletPointMarkAt(index))
+        if (index < endOfBulletPoint) {
+            sink.text(index, endOfBulletPoint)
+        }
+        repeat(depth) { sink.endBulletPoint(endOfBulletPoint) }
+        if (endOfBulletPoint < end) {
+            sink.text(endOfBulletPoint, end)
+        }
+    }
+
+    /**
+     * Find the [mark] closing a code block. If there is none, the returned value is `-end - 1`,
+     * where `end` is the end of the content that becomes text.
+     */
+    private fun findEndOfCodeBlock(start: Int, mark: String, isBulletPoint: Boolean): Int {
+        val first = mark[0]
+        val singleChar = mark.length == 1
+        var index = start
+        while (index < length) {
+            if (source[index] == first && (singleChar || source.startsWith(mark, index))) {
+                return index
+            }
+            if (isLineStart(index) && isQuoteAt(index)) {
+                break
+            }
+            if (isBulletPoint && source.startsWith(lineSeparator, index)) {
+                index += lineSeparator.length
+                break
+            }
+            index++
+        }
+        return -index - 1
+    }
+
+    private fun findEndOfParagraph(start: Int): Int {
+        val endOfParagraph = source.indexOf(lineSeparator, start)
+        // add the line separator as part of the element or, if there's no end of line, consider
+        // that the element ends with the text
+        return if (endOfParagraph == -1 || endOfParagraph + lineSeparator.length > length) {
+            length
+        } else {
+            endOfParagraph + lineSeparator.length
+        }
+    }
+
+    private fun endsWithLineSeparator(start: Int, end: Int) =
+            end - start >= lineSeparator.length &&
+                    source.startsWith(lineSeparator, end - lineSeparator.length)
+
+    private fun isQuoteAt(index: Int) =
+            index < length && rules.isMarkStart(source[index]) && isLineStart(index) &&
+                    rules.matchAt(source, index, MarkdownRules.QUOTE) != MarkdownRules.NO_RULE
+
+    private fun isBulletPointMarkAt(index: Int) =
+            rules.matchAt(source, index, MarkdownRules.BULLET_POINT) != MarkdownRules.NO_RULE
+
+    private fun isLineStart(index: Int): Boolean {
+        if (index == 0) {
+            return true
+        }
+        return when (source[index - 1]) {
+            '\n', '\u0085', '\u2028', '\u2029' -> true
+            // "\r\n" is a single line terminator
+            '\r' -> source[index] != '\n'
+            else -> false
+        }
+    }
+
+    companion object {
+
+        /**
+         * Whether nothing that follows the element at [index] depends on the text before the end of
+         * that element, and nothing before that end depends on what follows. This is the case
+         * after a quote or a bullet point that starts a line, if it ends with a line separator.
+         *
+         * A bullet point directly following a code block doesn't start a line, and depends on the
+         * marks that follow it.
+         */
+        fun isResyncPoint(elements: List<Element>, index: Int, lineSeparator: String): Boolean {
+            if (index < 0) {
+                return false
+            }
+            val element = elements[index]
+            return when (element.type) {
+                Element.Type.QUOTE -> element.text.endsWith(lineSeparator)
+                Element.Type.BULLET_POINT -> element.text.endsWith(lineSeparator) &&
+                        (index == 0 || elements[index - 1].type != Element.Type.CODE_BLOCK)
+                else -> false
+            }
+        }
+
+        private const val ALL_KINDS =
+                MarkdownRules.QUOTE or MarkdownRules.BULLET_POINT or MarkdownRules.CODE_BLOCK
+    }
+}
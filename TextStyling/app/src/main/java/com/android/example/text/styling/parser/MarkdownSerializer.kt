@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.IOException
+
+/**
+ * Binary form of a [TextMarkdown], to store parsed markdown and read it back without parsing the
+ * text again. Every element is written as its type, its text and its children.
+ */
+internal object MarkdownSerializer {
+
+    private const val VERSION = 1
+
+    // sizes of the data written by DataOutput
+    private const val VERSION_SIZE = 4
+    private const val INT_SIZE = 4
+    private const val CHAR_SIZE = 2
+    // type, text length and element count of an element without text or elements
+    private const val MIN_ELEMENT_SIZE = 1 + 2 * INT_SIZE
+
+    fun write(markdown: TextMarkdown, output: DataOutput) {
+        output.writeInt(VERSION)
+        writeElements(markdown.elements, output)
+    }
+
+    /**
+     * Read markdown written by [write]. The counts and lengths found in [input] are checked
+     * against [size], so that a corrupt input fails instead of allocating for data that isn't
+     * there.
+     *
+     * @param size the number of bytes that can be read from [input]
+     * @throws IOException if the input wasn't written by [write], or by another version of it
+     */
+    fun read(input: DataInput, size: Long = Long.MAX_VALUE): TextMarkdown {
+        val version = input.readInt()
+        if (version != VERSION) {
+            throw IOException("Unsupported version $version")
+        }
+        return TextMarkdown(Reader(input, size - VERSION_SIZE).readElements())
+    }
+
+    private fun writeElements(elements: List<Element>, output: DataOutput) {
+        output.writeInt(elements.size)
+        for (element in elements) {
+            output.writeByte(element.type.ordinal)
+            output.writeInt(element.text.length)
+            output.writeChars(element.text.toString())
+            writeElements(element.elements, output)
+        }
+    }
+
+    /**
+     * Reads the elements of [input], with [remaining] bytes left to read.
+     */
+    private class Reader(private val input: DataInput, private var remaining: Long) {
+
+        private val types = Element.Type.values()
+
+        fun readElements(): List<Element> {
+            val size = readInt()
+            if (size < 0 || size > remaining / MIN_ELEMENT_SIZE) {
+                throw IOException("Invalid element count $size")
+            }
+            if (size == 0) {
+                return emptyList()
+            }
+            val elements = ArrayList<Element>(size)
+            repeat(size) {
+                remaining--
+                val type = input.readUnsignedByte()
+                if (type >= types.size) {
+                    throw IOException("Invalid element type $type")
+                }
+                val length = readInt()
+                if (length < 0 || length > remaining / CHAR_SIZE) {
+                    throw IOException("Invalid text length $length")
+                }
+                remaining -= length.toLong() * CHAR_SIZE
+                val text = CharArray(length) { input.readChar() }
+                elements.add(Element(types[type], String(text), readElements()))
+            }
+            return elements
+        }
+
+        private fun readInt(): Int {
+            remaining -= INT_SIZE
+            return input.readInt()
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+/**
+ * Receives markdown elements in the order they appear in the text, for example from
+ * [FlatMarkdown.accept]. Positions are indexes in the parsed text, and only cover the text of the
+ * element, without its marks.
+ */
+interface MarkdownSink {
+
+    fun text(start: Int, end: Int)
+
+    fun quote(start: Int, end: Int)
+
+    fun codeBlock(start: Int, end: Int)
+
+    /**
+     * A bullet point starts. Every element reported until the matching [endBulletPoint] is
+     * nested in this bullet point.
+     */
+    fun startBulletPoint(start: Int)
+
+    fun endBulletPoint(end: Int)
+}
+
+/**
+ * Builds the [Element]s reported to it, adding the top level ones to [elements].
+ */
+internal class ElementTreeBuilder(
+        private val source: String,
+        private val elements: MutableList<Element>
+) : MarkdownSink {
+
+    // start of the text and children of the bullet points that are not closed yet
+    private val bulletPointStarts = mutableListOf<Int>()
+    private val bulletPointChildren = mutableListOf<MutableList<Element>>()
+
+    private val current: MutableList<Element>
+        get() = if (bulletPointChildren.isEmpty()) elements else bulletPointChildren.last()
+
+    override fun text(start: Int, end: Int) {
+        current.add(Element(Element.Type.TEXT, source.substring(start, end)))
+    }
+
+    override fun quote(start: Int, end: Int) {
+        current.add(Element(Element.Type.QUOTE, source.substring(start, end)))
+    }
+
+    override fun codeBlock(start: Int, end: Int) {
+        current.add(Element(Element.Type.CODE_BLOCK, source.substring(start, end)))
+    }
+
+    override fun startBulletPoint(start: Int) {
+        bulletPointStarts.add(start)
+        bulletPointChildren.add(mutableListOf())
+    }
+
+    override fun endBulletPoint(end: Int) {
+        val start = bulletPointStarts.removeAt(bulletPointStarts.lastIndex)
+        val children = bulletPointChildren.removeAt(bulletPointChildren.lastIndex)
+        current.add(Element(Element.Type.BULLET_POINT, source.substring(start, end), children))
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import java.util.Arrays
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+
+/**
+ * Parses a text split in shards, in parallel.
+ *
+ * Every shard starts at the beginning of a line and is scanned as if nothing came before it.
+ * This is only right once the scan of the shard reaches a resync point (see
+ * [MarkdownScanner.isResyncPoint]) that the scan of the previous shard reached as well: from
+ * there, both scans see the same text in the same state. So every shard is scanned past its end,
+ * until its first resync point in the next shard, and the elements of the next shard are used
+ * from that point on. If the next shard didn't reach the same resync point, for example because
+ * it started inside a code block, the text is scanned again from there, on the calling thread.
+ *
+ * A shard isn't scanned past the end of the next shard: if there is no resync point until there,
+ * as in a long code block or in text without quotes or bullet points, the next shards wouldn't
+ * have one to be joined at either. The shard then only keeps its elements until its last resync
+ * point, and the rest of the text is scanned on the calling thread, so that such a text costs
+ * at most about three serial scans instead of one per shard.
+ */
+internal class ParallelParser(
+        private val source: String,
+        private val lineSeparator: String,
+        private val rules: MarkdownRules
+) {
+
+    /**
+     * Elements found by scanning from [start], with the positions of the resync points that the
+     * scan reached and how many elements were found before each of them.
+     */
+    private class Shard(val start: Int) {
+        val elements = mutableListOf<Element>()
+        var resyncPositions = IntArray(8)
+        var resyncCounts = IntArray(8)
+        var resyncSize = 0
+        var end = 0
+
+        fun addResyncPoint(position: Int) {
+            if (resyncSize == resyncPositions.size) {
+                resyncPositions = resyncPositions.copyOf(resyncSize * 2)
+                resyncCounts = resyncCounts.copyOf(resyncSize * 2)
+            }
+            resyncPositions[resyncSize] = position
+            resyncCounts[resyncSize] = elements.size
+            resyncSize++
+        }
+
+        /**
+         * How many elements this shard found before [position], or -1 if [position] isn't one of
+         * its resync points.
+         */
+        fun countAt(position: Int): Int {
+            if (position == start) {
+                return 0
+            }
+            val index = Arrays.binarySearch(resyncPositions, 0, resyncSize, position)
+            return if (index >= 0) resyncCounts[index] else -1
+        }
+    }
+
+    fun parse(executor: ExecutorService, shardCount: Int): List<Element> {
+        val starts = findShardStarts(shardCount)
+        val futures = starts.indices.map { index ->
+            val stop = if (index + 1 < starts.size) starts[index + 1] else source.length
+            val limit = if (index + 2 < starts.size) starts[index + 2] else source.length
+            executor.submit(Callable { scanShard(starts[index], stop, limit) })
+        }
+        val shards = futures.map { it.get() }
+        return stitch(shards)
+    }
+
+    /**
+     * Split the source in [shardCount] parts of similar length, starting at the beginning of a
+     * line.
+     */
+    private fun findShardStarts(shardCount: Int): List<Int> {
+        val starts = mutableListOf(0)
+        for (index in 1 until shardCount) {
+            val lineEnd = source.indexOf(lineSeparator, source.length / shardCount * index)
+            if (lineEnd == -1) {
+                break
+            }
+            val start = lineEnd + lineSeparator.length
+            if (start > starts.last() && start < source.length) {
+                starts.add(start)
+            }
+        }
+        return starts
+    }
+
+    /**
+     * Scan from [start] until the first resync point at or after [stop], but not past [limit],
+     * the beginning of a line. If the scan reaches [limit] first, the shard ends at its last
+     * resync point.
+     */
+    private fun scanShard(start: Int, stop: Int, limit: Int): Shard {
+        val shard = Shard(start)
+        val scanner = MarkdownScanner(source, lineSeparator, rules,
+                ElementTreeBuilder(source, shard.elements), limit)
+        var stopped = false
+        shard.end = scanner.scan(start) {
+            shard.addResyncPoint(it)
+            stopped = it >= stop
+            stopped
+        }
+        if (!stopped && limit < source.length) {
+            // the elements after the last resync point may continue past the limit
+            val last = shard.resyncSize - 1
+            val count = if (last >= 0) shard.resyncCounts[last] else 0
+            shard.elements.subList(count, shard.elements.size).clear()
+            shard.end = if (last >= 0) shard.resyncPositions[last] else start
+        }
+        return shard
+    }
+
+    private fun stitch(shards: List<Shard>): List<Element> {
+        // the first shard starts at the beginning of the text, so it is right until its end
+        val elements = ArrayList<Element>(shards.sumOf { it.elements.size })
+        elements.addAll(shards[0].elements)
+        var position = shards[0].end
+        var next = 1
+        while (position < source.length) {
+            // skip the shards that the previous ones scanned past. The last shard ends with the
+            // text, so it is never skipped
+            while (next < shards.size && shards[next].end <= position) {
+                next++
+            }
+            val shard = shards[next]
+            val count = shard.countAt(position)
+            if (count >= 0) {
+                elements.addAll(shard.elements.subList(count, shard.elements.size))
+                position = shard.end
+                next++
+                continue
+            }
+
+            // the shard started in a different state, so scan again until a resync point that a
+            // later shard also reached
+            var stopShard = -1
+            val scanner = MarkdownScanner(source, lineSeparator, rules,
+                    ElementTreeBuilder(source, elements))
+            position = scanner.scan(position) { resync ->
+                for (index in next until shards.size) {
+                    if (shards[index].start <= resync && resync < shards[index].end &&
+                            shards[index].countAt(resync) >= 0) {
+                        stopShard = index
+                        return@scan true
+                    }
+                }
+                false
+            }
+            if (stopShard >= 0) {
+                next = stopShard
+            }
+        }
+        return elements
+    }
+}
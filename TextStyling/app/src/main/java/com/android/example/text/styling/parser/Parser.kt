@@ -15,7 +15,12 @@
  */
 package com.android.example.text.styling.parser
 
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.Reader
+import java.nio.charset.Charset
 import java.util.Collections.emptyList
+import java.util.concurrent.ExecutorService
 import java.util.regex.Pattern
 
 /**
@@ -30,22 +35,187 @@ import java.util.regex.Pattern
  *  * Lines starting with “+ ” or “* ” will be transformed into bullet points. Bullet
  * points can contain nested markdown elements, like code.
  *
+ * These are the [MarkdownRules.DEFAULT] rules. The functions that scan the text can be given
+ * other [MarkdownRules].
  */
 object Parser {
 
+    /**
+     * Ways of finding the markdown elements in a text. All of them produce the same elements.
+     */
+    enum class Strategy {
+        /**
+         * Find the marks with regular expressions, then parse the text between them again.
+         */
+        REGEX,
+        /**
+         * Scan the text once, character by character, in linear time.
+         */
+        SCANNER
+    }
+
     /**
      * Parse a text and extract the [TextMarkdown].
      *
      * @param string string to be parsed into markdown elements
+     * @param strategy how the markdown elements are found in the text
      * @return the [TextMarkdown]
      */
-    fun parse(string: String): TextMarkdown {
-        val parents = mutableListOf<Element>()
+    fun parse(string: String, strategy: Strategy = Strategy.SCANNER): TextMarkdown {
+        return when (strategy) {
+            Strategy.REGEX -> parseWithRegex(string)
+            Strategy.SCANNER -> parseWithScanner(string, MarkdownRules.DEFAULT)
+        }
+    }
+
+    /**
+     * Parse a text with other rules than the default ones.
+     *
+     * @param string string to be parsed into markdown elements
+     * @param rules the marks of the markdown elements
+     * @return the [TextMarkdown]
+     */
+    fun parse(string: String, rules: MarkdownRules): TextMarkdown {
+        return parseWithScanner(string, rules)
+    }
+
+    /**
+     * Parse a text into a [FlatMarkdown], that doesn't copy the text of the elements and
+     * doesn't need an object per element.
+     *
+     * @param string string to be parsed into markdown elements
+     * @param rules the marks of the markdown elements
+     * @return the [FlatMarkdown]
+     */
+    fun parseFlat(string: String, rules: MarkdownRules = MarkdownRules.DEFAULT): FlatMarkdown {
+        val builder = FlatMarkdownBuilder(string)
+        MarkdownScanner(string, LINE_SEPARATOR, rules, builder).scan()
+        return builder.build()
+    }
 
-        val patternQuote = Pattern.compile(QUOTE_REGEX)
-        val pattern = Pattern.compile(BULLET_POINT_CODE_BLOCK_REGEX)
+    /**
+     * Parse a text on several threads. The text is split in [shardCount] parts, at the beginning
+     * of lines, and the parts are parsed at the same time on [executor]. Texts shorter than
+     * [PARALLEL_THRESHOLD] are parsed on the calling thread, like with [parse].
+     *
+     * @param string string to be parsed into markdown elements
+     * @param executor where the parts of the text are parsed
+     * @param shardCount how many parts the text is split in
+     * @param rules the marks of the markdown elements
+     * @return the [TextMarkdown]
+     */
+    fun parseParallel(string: String, executor: ExecutorService,
+                      shardCount: Int = Runtime.getRuntime().availableProcessors(),
+                      rules: MarkdownRules = MarkdownRules.DEFAULT): TextMarkdown {
+        if (string.length < PARALLEL_THRESHOLD || shardCount < 2) {
+            return parseWithScanner(string, rules)
+        }
+        return TextMarkdown(ParallelParser(string, LINE_SEPARATOR, rules)
+                .parse(executor, shardCount))
+    }
 
-        val matcher = patternQuote.matcher(string)
+    /**
+     * Parse text read from [reader], without waiting for the whole text to be read.
+     *
+     * [onElement] is called with every top level element, in order, as soon as the paragraph
+     * it ends with is read. This way, the first elements of a long text can be displayed before
+     * the rest of the text is read. The reader is not closed.
+     *
+     * @param reader the text to be parsed into markdown elements
+     * @param rules the marks of the markdown elements
+     * @param onElement called with every top level element
+     */
+    fun parse(reader: Reader, rules: MarkdownRules = MarkdownRules.DEFAULT,
+              onElement: (Element) -> Unit) {
+        StreamingParser(LINE_SEPARATOR, rules, onElement).parse(reader)
+    }
+
+    /**
+     * Parse text read from [input], like [parse] with a [Reader].
+     *
+     * @param input the text to be parsed into markdown elements
+     * @param charset the charset of the text
+     * @param rules the marks of the markdown elements
+     * @param onElement called with every top level element
+     */
+    fun parse(input: InputStream, charset: Charset = Charsets.UTF_8,
+              rules: MarkdownRules = MarkdownRules.DEFAULT, onElement: (Element) -> Unit) {
+        parse(InputStreamReader(input, charset), rules, onElement)
+    }
+
+    /**
+     * Parse a text after an edit, reusing the elements of the text before the edit.
+     *
+     * Only the paragraphs between the last quote or bullet point that ends before the edit and
+     * the first one after it that ends the same way in both texts are parsed again. The
+     * elements outside of these paragraphs are reused from [previous].
+     *
+     * @param string the edited text, to be parsed into markdown elements
+     * @param previous the [TextMarkdown] of the text before the edit
+     * @param edit the edit that turned the previous text into [string]
+     * @param rules the marks of the markdown elements, the same as for [previous]
+     * @return the [TextMarkdown]
+     */
+    fun parse(string: String, previous: TextMarkdown, edit: TextEdit,
+              rules: MarkdownRules = MarkdownRules.DEFAULT): TextMarkdown {
+        val previousElements = previous.elements
+        val editEnd = edit.start + edit.removedLength
+        val delta = edit.insertedText.length - edit.removedLength
+
+        // find the last element to reuse before the edit
+        var firstParsedIndex = 0
+        var parseStart = 0
+        var offset = 0
+        for (index in previousElements.indices) {
+            offset += rules.sourceLength(previousElements[index])
+            if (offset > edit.start) {
+                break
+            }
+            if (MarkdownScanner.isResyncPoint(previousElements, index, LINE_SEPARATOR)) {
+                firstParsedIndex = index + 1
+                parseStart = offset
+            }
+        }
+
+        // parse from there until the new elements end where previous ones ended after the edit
+        var previousIndex = firstParsedIndex
+        var previousEnd = parseStart
+        val elements = ArrayList<Element>(previousElements.size)
+        elements.addAll(previousElements.subList(0, firstParsedIndex))
+        val scanner = MarkdownScanner(string, LINE_SEPARATOR, rules,
+                ElementTreeBuilder(string, elements))
+        val parseEnd = scanner.scan(parseStart) {
+            val previousPosition = it - delta
+            if (previousPosition < editEnd) {
+                return@scan false
+            }
+            while (previousIndex < previousElements.size && previousEnd < previousPosition) {
+                previousEnd += rules.sourceLength(previousElements[previousIndex++])
+            }
+            previousEnd == previousPosition &&
+                    MarkdownScanner.isResyncPoint(previousElements, previousIndex - 1,
+                            LINE_SEPARATOR)
+        }
+
+        // the rest of the text is the same as before the edit
+        if (parseEnd < string.length) {
+            elements.addAll(previousElements.subList(previousIndex, previousElements.size))
+        }
+        return TextMarkdown(elements)
+    }
+
+    private fun parseWithScanner(string: String, rules: MarkdownRules): TextMarkdown {
+        val elements = mutableListOf<Element>()
+        MarkdownScanner(string, LINE_SEPARATOR, rules, ElementTreeBuilder(string, elements))
+                .scan()
+        return TextMarkdown(elements)
+    }
+
+    private fun parseWithRegex(string: String): TextMarkdown {
+        val parents = mutableListOf<Element>()
+        val pattern = BULLET_POINT_CODE_BLOCK_PATTERN
+
+        val matcher = QUOTE_PATTERN.matcher(string)
         var lastStartIndex = 0
 
         while (matcher.find(lastStartIndex)) {
@@ -145,6 +315,11 @@ object Parser {
         return parents
     }
 
+    /**
+     * Length under which a text is not worth parsing on several threads.
+     */
+    const val PARALLEL_THRESHOLD = 64 * 1024
+
     private const val BULLET_PLUS = "+ "
     private const val BULLET_STAR = "* "
     private const val QUOTE_REGEX = "(?m)^> "
@@ -154,5 +329,9 @@ object Parser {
     private const val CODE_BLOCK = "`"
     private const val BULLET_POINT_CODE_BLOCK_REGEX = "($BULLET_POINT_REGEX|$CODE_BLOCK)"
 
+    // compiled once, a Pattern can be shared by threads
+    private val QUOTE_PATTERN = Pattern.compile(QUOTE_REGEX)
+    private val BULLET_POINT_CODE_BLOCK_PATTERN = Pattern.compile(BULLET_POINT_CODE_BLOCK_REGEX)
+
     private val LINE_SEPARATOR = System.getProperty("line.separator")
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import java.io.Reader
+
+/**
+ * Parses text as it is read and reports the top level elements as soon as they can't change
+ * anymore, which is the case for all the elements before a resync point, see
+ * [MarkdownScanner.isResyncPoint]. Only the text after the last resync point is kept in memory.
+ */
+internal class StreamingParser(
+        private val lineSeparator: String,
+        private val rules: MarkdownRules,
+        private val onElement: (Element) -> Unit
+) {
+
+    // text that was read but whose elements were not reported yet
+    private val buffer = StringBuilder()
+
+    // after a scan that couldn't report any element, wait for the buffer to double before
+    // scanning it again, so a long paragraph isn't scanned once per chunk
+    private var nextScanLength = 0
+
+    fun parse(reader: Reader) {
+        val chunk = CharArray(CHUNK_SIZE)
+        while (true) {
+            val count = reader.read(chunk)
+            if (count < 0) {
+                break
+            }
+            buffer.append(chunk, 0, count)
+            // elements only end with a paragraph, so wait for the end of a line
+            if (buffer.length >= nextScanLength && containsLineEnd(chunk, count)) {
+                scan(false)
+            }
+        }
+        scan(true)
+    }
+
+    private fun scan(isLast: Boolean) {
+        val source = buffer.toString()
+        val elements = mutableListOf<Element>()
+        var finalCount = 0
+        var finalEnd = 0
+        MarkdownScanner(source, lineSeparator, rules, ElementTreeBuilder(source, elements)).scan(0) {
+            finalCount = elements.size
+            finalEnd = it
+            false
+        }
+
+        if (isLast) {
+            elements.forEach(onElement)
+            buffer.setLength(0)
+            return
+        }
+        for (index in 0 until finalCount) {
+            onElement(elements[index])
+        }
+        if (finalEnd == 0) {
+            nextScanLength = buffer.length * 2
+        } else {
+            buffer.delete(0, finalEnd)
+            nextScanLength = 0
+        }
+    }
+
+    private fun containsLineEnd(chunk: CharArray, count: Int): Boolean {
+        val lineEnd = lineSeparator.last()
+        for (index in 0 until count) {
+            if (chunk[index] == lineEnd) {
+                return true
+            }
+        }
+        return false
+    }
+
+    companion object {
+        private const val CHUNK_SIZE = 8192
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+/**
+ * Change made to a text: [removedLength] characters starting at [start] were replaced by
+ * [insertedText]. This matches what [android.text.TextWatcher.onTextChanged] reports.
+ */
+data class TextEdit(val start: Int,
+                    val removedLength: Int,
+                    val insertedText: CharSequence
+) {
+
+    /**
+     * Apply the edit to [text].
+     */
+    fun applyTo(text: String): String {
+        return StringBuilder(text.length - removedLength + insertedText.length)
+                .append(text, 0, start)
+                .append(insertedText)
+                .append(text, start + removedLength, text.length)
+                .toString()
+    }
+}
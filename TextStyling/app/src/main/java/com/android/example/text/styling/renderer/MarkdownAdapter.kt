@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import android.util.LruCache
+import android.view.LayoutInflater
+import android.view.ViewGroup
+import android.widget.TextView
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import com.android.example.text.styling.R
+import com.android.example.text.styling.parser.TextMarkdown
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+
+/**
+ * Shows a long markdown document in a [RecyclerView], one paragraph sized block per item, so
+ * only the blocks on screen have views and only the blocks that were shown are rendered.
+ *
+ * A block is rendered when it's bound, unless it was already prefetched: while the list is
+ * scrolled, the next [prefetchDistance] blocks in the scroll direction are rendered on
+ * [executor]. The last [maxRenderedBlocks] rendered blocks are kept.
+ */
+class MarkdownAdapter(
+        private val markdownBuilder: MarkdownBuilder,
+        markdown: TextMarkdown,
+        private val executor: Executor,
+        private val prefetchDistance: Int = DEFAULT_PREFETCH_DISTANCE,
+        maxRenderedBlocks: Int = DEFAULT_MAX_RENDERED_BLOCKS
+) : RecyclerView.Adapter<MarkdownAdapter.BlockViewHolder>() {
+
+    private val blocks = MarkdownBlocks.split(markdown, LINE_SEPARATOR)
+    private val renderedBlocks = LruCache<Int, CharSequence>(maxRenderedBlocks)
+    private val prefetchingBlocks = Collections.newSetFromMap(ConcurrentHashMap<Int, Boolean>())
+
+    private val scrollListener = object : RecyclerView.OnScrollListener() {
+        override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+            val layoutManager = recyclerView.layoutManager as? LinearLayoutManager ?: return
+            if (dy >= 0) {
+                val last = layoutManager.findLastVisibleItemPosition()
+                if (last != RecyclerView.NO_POSITION) {
+                    prefetch(last + 1, last + prefetchDistance)
+                }
+            } else {
+                val first = layoutManager.findFirstVisibleItemPosition()
+                if (first != RecyclerView.NO_POSITION) {
+                    prefetch(first - prefetchDistance, first - 1)
+                }
+            }
+        }
+    }
+
+    override fun getItemCount() = blocks.size
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): BlockViewHolder {
+        val view = LayoutInflater.from(parent.context)
+                .inflate(R.layout.markdown_block, parent, false)
+        return BlockViewHolder(view as TextView)
+    }
+
+    override fun onBindViewHolder(holder: BlockViewHolder, position: Int) {
+        holder.textView.text = renderBlock(position)
+    }
+
+    override fun onAttachedToRecyclerView(recyclerView: RecyclerView) {
+        recyclerView.addOnScrollListener(scrollListener)
+    }
+
+    override fun onDetachedFromRecyclerView(recyclerView: RecyclerView) {
+        recyclerView.removeOnScrollListener(scrollListener)
+    }
+
+    /**
+     * The rendered block at [position], rendered now if it wasn't prefetched.
+     */
+    internal fun renderBlock(position: Int): CharSequence {
+        renderedBlocks[position]?.let { return it }
+        return render(position).also { renderedBlocks.put(position, it) }
+    }
+
+    /**
+     * Render the blocks between [first] and [last] on the executor, unless they are already
+     * rendered or being rendered.
+     */
+    internal fun prefetch(first: Int, last: Int) {
+        for (position in maxOf(first, 0)..minOf(last, blocks.size - 1)) {
+            if (renderedBlocks[position] != null || !prefetchingBlocks.add(position)) {
+                continue
+            }
+            executor.execute {
+                try {
+                    if (renderedBlocks[position] == null) {
+                        renderedBlocks.put(position, render(position))
+                    }
+                } finally {
+                    prefetchingBlocks.remove(position)
+                }
+            }
+        }
+    }
+
+    private fun render(position: Int): CharSequence {
+        val text = markdownBuilder.markdownToSpans(blocks[position])
+        // every block has its own view, so the line separator ending it would add an empty line
+        return if (text.endsWith(LINE_SEPARATOR)) {
+            text.subSequence(0, text.length - LINE_SEPARATOR.length)
+        } else {
+            text
+        }
+    }
+
+    class BlockViewHolder(val textView: TextView) : RecyclerView.ViewHolder(textView)
+
+    companion object {
+        const val DEFAULT_PREFETCH_DISTANCE = 10
+        const val DEFAULT_MAX_RENDERED_BLOCKS = 200
+
+        private val LINE_SEPARATOR = System.getProperty("line.separator")
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import com.android.example.text.styling.parser.Element
+import com.android.example.text.styling.parser.TextMarkdown
+
+/**
+ * Splits the top level elements of a [TextMarkdown] into paragraph sized blocks, that can be
+ * rendered on their own.
+ *
+ * A block ends after a quote or a bullet point that ends with a line separator, and text
+ * elements are cut after each of their line separators, since a single text element can hold
+ * many paragraphs. A code block can span several lines, so it's never cut. Rendering the blocks
+ * one after the other gives the same text and spans as rendering the whole markdown.
+ */
+internal object MarkdownBlocks {
+
+    fun split(markdown: TextMarkdown, lineSeparator: String): List<TextMarkdown> {
+        val blocks = mutableListOf<TextMarkdown>()
+        var block = mutableListOf<Element>()
+        for (element in markdown.elements) {
+            if (element.type != Element.Type.TEXT) {
+                block.add(element)
+                if (element.type != Element.Type.CODE_BLOCK &&
+                        element.text.endsWith(lineSeparator)) {
+                    blocks.add(TextMarkdown(block))
+                    block = mutableListOf()
+                }
+                continue
+            }
+            val text = element.text
+            var start = 0
+            var separator = text.indexOf(lineSeparator)
+            while (separator >= 0) {
+                val end = separator + lineSeparator.length
+                block.add(textElement(element, start, end))
+                blocks.add(TextMarkdown(block))
+                block = mutableListOf()
+                start = end
+                separator = text.indexOf(lineSeparator, start)
+            }
+            if (start < text.length) {
+                block.add(textElement(element, start, text.length))
+            }
+        }
+        if (block.isNotEmpty()) {
+            blocks.add(TextMarkdown(block))
+        }
+        return blocks
+    }
+
+    private fun textElement(element: Element, start: Int, end: Int) =
+            if (start == 0 && end == element.text.length) {
+                element
+            } else {
+                Element(Element.Type.TEXT, element.text.subSequence(start, end))
+            }
+}
@@ -18,62 +18,124 @@ package com.android.example.text.styling.renderer
 import android.graphics.Typeface
 import androidx.annotation.ColorInt
 import android.text.SpannableStringBuilder
+import android.text.Spanned
 import android.text.SpannedString
 import android.text.style.LeadingMarginSpan
 import android.text.style.RelativeSizeSpan
 import android.text.style.StyleSpan
-import androidx.core.text.buildSpannedString
-import androidx.core.text.inSpans
-import com.android.example.text.styling.parser.Element
+import android.widget.TextView
+import androidx.annotation.MainThread
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.widget.TextViewCompat
+import com.android.example.text.styling.parser.FlatMarkdown
 import com.android.example.text.styling.parser.Parser
+import com.android.example.text.styling.parser.TextMarkdown
 import com.android.example.text.styling.renderer.spans.BulletPointSpan
 import com.android.example.text.styling.renderer.spans.CodeBlockSpan
+import java.util.concurrent.Callable
+import java.util.concurrent.Executor
+import java.util.concurrent.Future
 
 /**
  * Renders the text as simple markdown, using spans.
+ *
+ * The elements are walked by a [MarkdownSpanRenderer], which reuses the span objects from one
+ * render to the next.
  */
 class MarkdownBuilder(
         @ColorInt private val bulletPointColor: Int,
         @ColorInt private val codeBackgroundColor: Int,
         private val codeBlockTypeface: Typeface?,
-        private val parser: Parser
+        private val parser: Parser,
+        private val cache: MarkdownCache? = null
 ) {
 
+    private val renderer = MarkdownSpanRenderer(object : SpanFactory {
+        override fun createCodeBlockSpan(): Any =
+                CodeBlockSpan(codeBlockTypeface, codeBackgroundColor)
+
+        override fun createQuoteSpans() = arrayOf<Any>(StyleSpan(Typeface.ITALIC),
+                LeadingMarginSpan.Standard(40),
+                RelativeSizeSpan(1.1f))
+
+        override fun createBulletPointSpan(): Any = BulletPointSpan(20, bulletPointColor)
+    })
+
+    /**
+     * Span usage of the last render. Texts taken from the [MarkdownCache] aren't rendered, so
+     * they don't change it.
+     */
+    @Volatile
+    var lastSpanStats = SpanStats(0, 0, 0)
+        private set
+
+    /**
+     * Render [string]. If the builder has a [MarkdownCache], the rendered text is taken from it
+     * when [string] was already rendered with the same style.
+     */
     fun markdownToSpans(string: String): SpannedString {
-        val markdown = parser.parse(string)
+        val cache = cache ?: return markdownToSpans(parser.parse(string))
+        val key = MarkdownCache.Key(string, bulletPointColor, codeBackgroundColor,
+                codeBlockTypeface)
+        cache[key]?.let { return it }
+        val markdown = cache.readMarkdown(string)
+                ?: parser.parse(string).also { cache.writeMarkdown(string, it) }
+        return markdownToSpans(markdown).also { cache.put(key, it) }
+    }
 
-        return buildSpannedString {
-            markdown.elements.forEach { it -> buildElement(it, this) }
-        }
+    /**
+     * Parse and render [string] on [executor], then set it on [textView] as a
+     * [PrecomputedTextCompat], so that the text layout is measured off the main thread as well.
+     *
+     * The text is precomputed with the params that [textView] has when this is called. The
+     * render is cancelled if [textView] is detached from its window before it ends, or if
+     * another render is started for [textView].
+     *
+     * @return the pending render, that can be cancelled
+     */
+    @MainThread
+    fun markdownToSpans(string: String, textView: TextView, executor: Executor):
+            Future<PrecomputedTextCompat> {
+        val params = TextViewCompat.getTextMetricsParams(textView)
+        val task = RenderTask(textView, Callable {
+            PrecomputedTextCompat.create(markdownToSpans(string), params)
+        })
+        task.start()
+        executor.execute(task)
+        return task
     }
 
-    private fun buildElement(element: Element, builder: SpannableStringBuilder): CharSequence {
-        return builder.apply {
-            // apply different spans depending on the type of the element
-            when (element.type) {
-                Element.Type.CODE_BLOCK -> {
-                    inSpans(CodeBlockSpan(codeBlockTypeface, codeBackgroundColor)) {
-                        append(element.text)
-                    }
-                }
-                Element.Type.QUOTE -> {
-                    // You can set multiple spans for the same text
-                    inSpans(StyleSpan(Typeface.ITALIC),
-                            LeadingMarginSpan.Standard(40),
-                            RelativeSizeSpan(1.1f)) {
-                        append(element.text)
-                    }
-                }
-                Element.Type.BULLET_POINT -> {
-                    inSpans(BulletPointSpan(20, bulletPointColor)) {
-                        for (child in element.elements) {
-                            buildElement(child, builder)
-                        }
-                    }
-                }
-                Element.Type.TEXT -> append(element.text)
-            }
-        }
+    /**
+     * Render markdown that was already parsed, for example after an edit with
+     * [Parser.parse] that reused the elements of the previous text.
+     */
+    fun markdownToSpans(markdown: TextMarkdown): SpannedString {
+        val builder = SpannableStringBuilder()
+        lastSpanStats = renderer.render(markdown, SpannableTarget(builder))
+        return SpannedString(builder)
     }
 
+    /**
+     * Render markdown parsed with [Parser.parseFlat]. The text of the elements is appended
+     * straight from the parsed source, without an object per element.
+     */
+    fun markdownToSpans(markdown: FlatMarkdown): SpannedString {
+        val builder = SpannableStringBuilder()
+        lastSpanStats = renderer.render(markdown, SpannableTarget(builder))
+        return SpannedString(builder)
+    }
+
+    private class SpannableTarget(private val builder: SpannableStringBuilder) : SpanTarget {
+        override val length: Int
+            get() = builder.length
+
+        override fun append(text: CharSequence, start: Int, end: Int) {
+            builder.append(text, start, end)
+        }
+
+        override fun setSpan(span: Any, start: Int, end: Int) {
+            // same flags as inSpans
+            builder.setSpan(span, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE)
+        }
+    }
 }
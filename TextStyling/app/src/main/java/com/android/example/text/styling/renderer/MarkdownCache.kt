@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import android.graphics.Typeface
+import android.text.SpannedString
+import android.util.Log
+import android.util.LruCache
+import androidx.annotation.ColorInt
+import com.android.example.text.styling.parser.MarkdownSerializer
+import com.android.example.text.styling.parser.TextMarkdown
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Cache of rendered markdown, for [MarkdownBuilder]s that render the same texts repeatedly.
+ *
+ * Rendered texts are kept in memory, least recently used first out, up to [maxSize] estimated
+ * bytes. They are keyed by the text and by the style of the builder that rendered them, so a
+ * cache can be shared by builders with different styles.
+ *
+ * If [directory] is set, the parsed markdown is also stored there, so a text that was rendered
+ * before a cold start only needs its spans to be built again. At most [maxDiskEntries] files are
+ * kept, the least recently used ones are deleted first.
+ */
+class MarkdownCache(
+        maxSize: Int,
+        private val directory: File? = null,
+        private val maxDiskEntries: Int = 64
+) {
+
+    internal data class Key(val text: String,
+                            @ColorInt val bulletPointColor: Int,
+                            @ColorInt val codeBackgroundColor: Int,
+                            val codeBlockTypeface: Typeface?)
+
+    private class Entry(val text: SpannedString, val size: Int)
+
+    private val entries = object : LruCache<Key, Entry>(maxSize) {
+        // the key keeps the whole text, marks included, next to the rendered one
+        override fun sizeOf(key: Key, value: Entry) = CHAR_SIZE * key.text.length + value.size
+    }
+
+    /**
+     * Number of times a rendered text was found in memory.
+     */
+    val hitCount: Int
+        get() = entries.hitCount()
+
+    /**
+     * Number of times a rendered text wasn't found in memory.
+     */
+    val missCount: Int
+        get() = entries.missCount()
+
+    /**
+     * Number of rendered texts removed from memory to stay under the size limit.
+     */
+    val evictionCount: Int
+        get() = entries.evictionCount()
+
+    /**
+     * Number of texts that weren't in memory but whose parsed markdown was read from disk.
+     */
+    val diskHitCount: Int
+        get() = diskHits.get()
+
+    private val diskHits = AtomicInteger()
+
+    internal operator fun get(key: Key): SpannedString? = entries.get(key)?.text
+
+    internal fun put(key: Key, text: SpannedString) {
+        val spanCount = text.getSpans(0, text.length, Any::class.java).size
+        entries.put(key, Entry(text, CHAR_SIZE * text.length + SPAN_SIZE * spanCount))
+    }
+
+    /**
+     * Read the parsed markdown of [text] from disk, or return null if it isn't stored there.
+     */
+    internal fun readMarkdown(text: String): TextMarkdown? {
+        val file = fileFor(text) ?: return null
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            val markdown = DataInputStream(BufferedInputStream(FileInputStream(file))).use {
+                MarkdownSerializer.read(it, file.length())
+            }
+            file.setLastModified(System.currentTimeMillis())
+            diskHits.incrementAndGet()
+            markdown
+        } catch (e: IOException) {
+            Log.w(TAG, "Can't read cached markdown", e)
+            file.delete()
+            null
+        }
+    }
+
+    /**
+     * Store the parsed [markdown] of [text] on disk, if this cache has a directory.
+     */
+    internal fun writeMarkdown(text: String, markdown: TextMarkdown) {
+        val file = fileFor(text) ?: return
+        // write the file next to its final place, so that a reader never sees it half written. Every
+        // write has its own file, as the same text can be rendered on several threads at once
+        var tmp: File? = null
+        try {
+            file.parentFile?.mkdirs()
+            tmp = File.createTempFile(file.name, ".tmp", file.parentFile)
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use {
+                MarkdownSerializer.write(markdown, it)
+            }
+            if (!tmp.renameTo(file)) {
+                throw IOException("Can't rename $tmp")
+            }
+            trimDirectory()
+        } catch (e: IOException) {
+            Log.w(TAG, "Can't cache markdown", e)
+            tmp?.delete()
+        }
+    }
+
+    /**
+     * Remove all rendered texts from memory. The parsed markdown stored on disk is kept.
+     */
+    fun evictAll() {
+        entries.evictAll()
+    }
+
+    private fun fileFor(text: String): File? {
+        val directory = directory ?: return null
+        val digest = MessageDigest.getInstance("SHA-256").digest(text.toByteArray())
+        val name = StringBuilder(digest.size * 2 + FILE_EXTENSION.length)
+        for (byte in digest) {
+            val value = byte.toInt() and 0xFF
+            name.append(HEX_DIGITS[value shr 4]).append(HEX_DIGITS[value and 0xF])
+        }
+        return File(directory, name.append(FILE_EXTENSION).toString())
+    }
+
+    @Synchronized
+    private fun trimDirectory() {
+        val files = directory?.listFiles { file -> file.name.endsWith(FILE_EXTENSION) } ?: return
+        if (files.size <= maxDiskEntries) {
+            return
+        }
+        files.sortBy { it.lastModified() }
+        for (index in 0 until files.size - maxDiskEntries) {
+            files[index].delete()
+        }
+    }
+
+    private companion object {
+        const val TAG = "MarkdownCache"
+        const val FILE_EXTENSION = ".md"
+        const val HEX_DIGITS = "0123456789abcdef"
+        // a char of the text, and the start, end, flags and object reference kept for a span
+        const val CHAR_SIZE = 2
+        const val SPAN_SIZE = 16
+    }
+}
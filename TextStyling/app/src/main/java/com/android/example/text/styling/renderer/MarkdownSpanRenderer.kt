@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import com.android.example.text.styling.parser.Element
+import com.android.example.text.styling.parser.FlatMarkdown
+import com.android.example.text.styling.parser.MarkdownSink
+import com.android.example.text.styling.parser.TextMarkdown
+
+/**
+ * Creates the span objects of the markdown elements. [MarkdownBuilder] creates framework spans;
+ * the benchmarks create stand-ins, so that [MarkdownSpanRenderer] runs on the JVM.
+ */
+interface SpanFactory {
+
+    fun createCodeBlockSpan(): Any
+
+    /**
+     * The spans of a quote. They are all set over the same text.
+     */
+    fun createQuoteSpans(): Array<Any>
+
+    fun createBulletPointSpan(): Any
+}
+
+/**
+ * The text of a render, such as a [android.text.SpannableStringBuilder].
+ */
+interface SpanTarget {
+
+    val length: Int
+
+    fun append(text: CharSequence, start: Int, end: Int)
+
+    /**
+     * Set [span] from [start] to [end], including text inserted at [start] but not at [end].
+     */
+    fun setSpan(span: Any, start: Int, end: Int)
+}
+
+/**
+ * Walks the markdown elements, appends their text to a [SpanTarget] and sets their spans, made by
+ * [factory].
+ *
+ * The spans don't hold any state that depends on the text they are set on, so the same span
+ * objects are reused from one render to the next. A span can only be set once on a given text
+ * though, so every element of a render still gets its own span objects, except for adjacent
+ * quotes and adjacent code blocks, which share the spans set over all of them.
+ */
+class MarkdownSpanRenderer(private val factory: SpanFactory) {
+
+    private val codeBlockSpans = SpanPool { factory.createCodeBlockSpan() }
+    private val quoteSpans = SpanPool { factory.createQuoteSpans() }
+    private val bulletPointSpans = SpanPool { factory.createBulletPointSpan() }
+
+    /**
+     * Render [markdown] into [target].
+     *
+     * @return the span usage of the render
+     */
+    fun render(markdown: TextMarkdown, target: SpanTarget): SpanStats {
+        val writer = SpanWriter(target)
+        markdown.elements.forEach { it -> buildElement(it, writer) }
+        return writer.finish()
+    }
+
+    /**
+     * Render markdown parsed with [com.android.example.text.styling.parser.Parser.parseFlat]
+     * into [target]. The text of the elements is appended straight from the parsed source,
+     * without an object per element.
+     *
+     * @return the span usage of the render
+     */
+    fun render(markdown: FlatMarkdown, target: SpanTarget): SpanStats {
+        val source = markdown.source
+        val writer = SpanWriter(target)
+        markdown.accept(object : MarkdownSink {
+            override fun text(start: Int, end: Int) = writer.text(source, start, end)
+
+            override fun quote(start: Int, end: Int) = writer.quote(source, start, end)
+
+            override fun codeBlock(start: Int, end: Int) = writer.codeBlock(source, start, end)
+
+            override fun startBulletPoint(start: Int) = writer.startBulletPoint()
+
+            override fun endBulletPoint(end: Int) = writer.endBulletPoint()
+        })
+        return writer.finish()
+    }
+
+    private fun buildElement(element: Element, writer: SpanWriter) {
+        val text = element.text
+        // apply different spans depending on the type of the element
+        when (element.type) {
+            Element.Type.CODE_BLOCK -> writer.codeBlock(text, 0, text.length)
+            Element.Type.QUOTE -> writer.quote(text, 0, text.length)
+            Element.Type.BULLET_POINT -> {
+                writer.startBulletPoint()
+                for (child in element.elements) {
+                    buildElement(child, writer)
+                }
+                writer.endBulletPoint()
+            }
+            Element.Type.TEXT -> writer.text(text, 0, text.length)
+        }
+    }
+
+    /**
+     * Span objects of one kind, kept between renders. The n-th span of that kind in a render is
+     * always the same object, so no object is set twice on the same text.
+     */
+    private class SpanPool<T>(private val factory: () -> T) {
+        private val spans = ArrayList<T>()
+
+        /**
+         * How many span objects were created since the pool was made.
+         */
+        val created: Int
+            @Synchronized get() = spans.size
+
+        @Synchronized
+        fun get(index: Int): T {
+            while (spans.size <= index) {
+                spans.add(factory())
+            }
+            return spans[index]
+        }
+    }
+
+    /**
+     * Appends the rendered elements of one text, and sets their spans.
+     */
+    private inner class SpanWriter(private val target: SpanTarget) {
+        private val createdBefore = codeBlockSpans.created + quoteSpans.created +
+                bulletPointSpans.created
+
+        // where the bullet points that are not closed yet start in the target
+        private var bulletPointStarts = IntArray(4)
+        private var depth = 0
+
+        // adjacent quotes or code blocks that don't have their spans yet
+        private var runType: Element.Type? = null
+        private var runStart = 0
+
+        private var quoteCount = 0
+        private var codeBlockCount = 0
+        private var bulletPointCount = 0
+        private var elementSpanCount = 0
+        private var spanCount = 0
+
+        fun text(text: CharSequence, start: Int, end: Int) {
+            closeRun()
+            target.append(text, start, end)
+        }
+
+        fun quote(text: CharSequence, start: Int, end: Int) {
+            // You can set multiple spans for the same text
+            elementSpanCount += QUOTE_SPAN_COUNT
+            startRun(Element.Type.QUOTE)
+            target.append(text, start, end)
+        }
+
+        fun codeBlock(text: CharSequence, start: Int, end: Int) {
+            elementSpanCount++
+            startRun(Element.Type.CODE_BLOCK)
+            target.append(text, start, end)
+        }
+
+        fun startBulletPoint() {
+            closeRun()
+            if (depth == bulletPointStarts.size) {
+                bulletPointStarts = bulletPointStarts.copyOf(depth * 2)
+            }
+            bulletPointStarts[depth++] = target.length
+        }
+
+        fun endBulletPoint() {
+            closeRun()
+            elementSpanCount++
+            // a bullet is drawn at the start of the span, so bullet points are never merged
+            setSpan(bulletPointSpans.get(bulletPointCount++), bulletPointStarts[--depth])
+        }
+
+        fun finish(): SpanStats {
+            closeRun()
+            val created = codeBlockSpans.created + quoteSpans.created + bulletPointSpans.created -
+                    createdBefore
+            return SpanStats(elementSpanCount, spanCount, created)
+        }
+
+        private fun startRun(type: Element.Type) {
+            if (runType != type) {
+                closeRun()
+                runType = type
+                runStart = target.length
+            }
+        }
+
+        private fun closeRun() {
+            when (runType) {
+                Element.Type.QUOTE -> {
+                    quoteSpans.get(quoteCount++).forEach { setSpan(it, runStart) }
+                }
+                Element.Type.CODE_BLOCK -> setSpan(codeBlockSpans.get(codeBlockCount++), runStart)
+                else -> {}
+            }
+            runType = null
+        }
+
+        private fun setSpan(span: Any, start: Int) {
+            target.setSpan(span, start, target.length)
+            spanCount++
+        }
+    }
+
+    private companion object {
+        const val QUOTE_SPAN_COUNT = 3
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import android.os.Handler
+import android.os.Looper
+import android.view.View
+import android.widget.TextView
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.widget.TextViewCompat
+import com.android.example.text.styling.R
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.FutureTask
+
+/**
+ * Renders a text on a background thread and sets it on [textView] from the main thread.
+ *
+ * The task is cancelled when [textView] is detached from its window, or when another render
+ * task is started for the same view, so an old text never replaces a newer one.
+ */
+internal class RenderTask(
+        private val textView: TextView,
+        render: Callable<PrecomputedTextCompat>
+) : FutureTask<PrecomputedTextCompat>(render), View.OnAttachStateChangeListener {
+
+    /**
+     * Attach the task to [textView]. Must be called on the main thread, before the task runs.
+     */
+    fun start() {
+        (textView.getTag(R.id.markdown_render_task) as RenderTask?)?.cancel(true)
+        textView.setTag(R.id.markdown_render_task, this)
+        textView.addOnAttachStateChangeListener(this)
+    }
+
+    override fun done() {
+        mainHandler.post { deliver() }
+    }
+
+    private fun deliver() {
+        textView.removeOnAttachStateChangeListener(this)
+        if (textView.getTag(R.id.markdown_render_task) === this) {
+            textView.setTag(R.id.markdown_render_task, null)
+        }
+        if (isCancelled) {
+            return
+        }
+        try {
+            TextViewCompat.setPrecomputedText(textView, get())
+        } catch (e: ExecutionException) {
+            // fail like rendering on the main thread would have
+            throw RuntimeException(e.cause)
+        }
+    }
+
+    override fun onViewAttachedToWindow(view: View) {}
+
+    override fun onViewDetachedFromWindow(view: View) {
+        cancel(true)
+    }
+
+    private companion object {
+        val mainHandler = Handler(Looper.getMainLooper())
+    }
+}
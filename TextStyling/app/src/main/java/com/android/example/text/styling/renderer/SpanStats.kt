@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+/**
+ * Span usage of one call to [MarkdownBuilder.markdownToSpans].
+ *
+ * @property elementSpanCount spans needed with one span object per style and per element
+ * @property spanCount spans set on the rendered text, after merging the spans of adjacent
+ * elements that share the same style
+ * @property spansCreated span objects created for this render; the others were reused from
+ * previous renders
+ */
+data class SpanStats(val elementSpanCount: Int,
+                     val spanCount: Int,
+                     val spansCreated: Int
+) {
+
+    /**
+     * Span objects that didn't have to be created, compared to one per style and per element.
+     */
+    val spansSaved: Int
+        get() = elementSpanCount - spansCreated
+}
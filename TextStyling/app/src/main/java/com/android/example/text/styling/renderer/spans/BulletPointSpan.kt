@@ -41,7 +41,14 @@ class BulletPointSpan(
     // By default, lazy is thread safe. This is good if this property can be accessed from different
     // threads, but impacts performance otherwise. As this property is initialized in a draw method,
     // it's important to be as fast as possible.
-    private val bulletPath: Path by lazy(LazyThreadSafetyMode.NONE) { Path() }
+    // The bullet is the same circle on every line, so the path is built once and then drawn
+    // translated to each bullet point.
+    private val bulletPath: Path by lazy(LazyThreadSafetyMode.NONE) {
+        Path().apply {
+            // Bullet is slightly better to avoid aliasing artifacts on mdpi devices.
+            addCircle(0.0f, 0.0f, 1.2f * DEFAULT_BULLET_RADIUS, Direction.CW)
+        }
+    }
 
     override fun getLeadingMargin(first: Boolean): Int {
         return (2 * DEFAULT_BULLET_RADIUS + 2 * gapWidth).toInt()
@@ -59,9 +66,6 @@ class BulletPointSpan(
         if ((text as Spanned).getSpanStart(this) == lineStart) {
             paint.withCustomColor {
                 if (canvas.isHardwareAccelerated) {
-                    // Bullet is slightly better to avoid aliasing artifacts on mdpi devices.
-                    bulletPath.addCircle(0.0f, 0.0f, 1.2f * DEFAULT_BULLET_RADIUS, Direction.CW)
-
                     canvas.withTranslation(
                             getCircleXLocation(currentMarginLocation, paragraphDirection),
                             getCircleYLocation(lineTop, lineBottom)
@@ -94,15 +98,19 @@ class BulletPointSpan(
 
     // When a custom color is used for bullets, the default style and colors need to be saved to
     // then be set again after the draw finishes. This extension hides the boilerplate.
+    // Text is usually drawn with a fill style already, so the style is only changed if needed.
     private inline fun Paint.withCustomColor(block: () -> Unit) {
         val oldStyle = style
         val oldColor = if (useColor) color else Color.TRANSPARENT
+        val changeStyle = oldStyle != Paint.Style.FILL
 
         if (useColor) {
             color = this@BulletPointSpan.color
         }
 
-        style = Paint.Style.FILL
+        if (changeStyle) {
+            style = Paint.Style.FILL
+        }
 
         block()
 
@@ -110,6 +118,8 @@ class BulletPointSpan(
             color = oldColor
         }
 
-        style = oldStyle
+        if (changeStyle) {
+            style = oldStyle
+        }
     }
 }
@@ -21,7 +21,7 @@ import android.text.style.MetricAffectingSpan
 
 /**
  * Span that changes the typeface of the text used to the one provided. The style set before will
- * be kept.
+ * be kept. The typeface with that style is taken from [TypefaceCache].
  */
 open class FontSpan(private val font: Typeface?) : MetricAffectingSpan() {
 
@@ -35,7 +35,7 @@ open class FontSpan(private val font: Typeface?) : MetricAffectingSpan() {
             val oldStyle = old?.style ?: 0
 
             // keep the style set before
-            val font = Typeface.create(font, oldStyle)
+            val font = TypefaceCache.create(font, oldStyle)
             typeface = font
         }
     }
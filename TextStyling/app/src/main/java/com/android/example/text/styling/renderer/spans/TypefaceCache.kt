@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer.spans
+
+import android.graphics.Typeface
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Process wide cache of the typefaces derived from a base typeface with [Typeface.create].
+ *
+ * Spans that change the typeface derive it again for every measure and draw pass, and a text
+ * can contain many of them, so the derived typefaces are kept for every base typeface and style.
+ */
+object TypefaceCache {
+
+    // the styles that Typeface.getStyle can return: NORMAL, BOLD, ITALIC and BOLD_ITALIC
+    private const val STYLE_COUNT = 4
+
+    // Typeface.create(null, style) derives from the default typeface
+    private val defaultTypefaces = AtomicReferenceArray<Typeface>(STYLE_COUNT)
+    private val typefaces = ConcurrentHashMap<Typeface, AtomicReferenceArray<Typeface>>()
+
+    private val createCount = AtomicLong()
+    private val avoidedCreateCount = AtomicLong()
+
+    /**
+     * Number of calls to [Typeface.create] made by this cache.
+     */
+    val creates: Long
+        get() = createCount.get()
+
+    /**
+     * Number of calls to [Typeface.create] that were avoided because the typeface was cached.
+     */
+    val avoidedCreates: Long
+        get() = avoidedCreateCount.get()
+
+    /**
+     * Same as [Typeface.create], but only the first call for a given [family] and [style]
+     * creates the typeface.
+     */
+    fun create(family: Typeface?, style: Int): Typeface {
+        if (style < 0 || style >= STYLE_COUNT) {
+            createCount.incrementAndGet()
+            return Typeface.create(family, style)
+        }
+        val derived = if (family == null) {
+            defaultTypefaces
+        } else {
+            typefaces.getOrPut(family) { AtomicReferenceArray(STYLE_COUNT) }
+        }
+        derived[style]?.let {
+            avoidedCreateCount.incrementAndGet()
+            return it
+        }
+        // two threads can both miss, they'll create equivalent typefaces
+        createCount.incrementAndGet()
+        val typeface = Typeface.create(family, style)
+        derived.set(style, typeface)
+        return typeface
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for [FlatMarkdown]
+ */
+class FlatMarkdownTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    @Test fun bulletPointWithCode() {
+        val text = "Points:$LINE_SEPARATOR* * bullet `one`"
+
+        val markdown = Parser.parseFlat(text)
+
+        assertEquals(5, markdown.size)
+        assertEquals(Element.Type.TEXT, markdown.type(0))
+        assertEquals(FlatMarkdown.NO_PARENT, markdown.parent(0))
+        assertEquals("Points:$LINE_SEPARATOR", text.substring(markdown.start(0), markdown.end(0)))
+        assertEquals(Element.Type.BULLET_POINT, markdown.type(1))
+        assertEquals(FlatMarkdown.NO_PARENT, markdown.parent(1))
+        assertEquals("* bullet `one`", text.substring(markdown.start(1), markdown.end(1)))
+        assertEquals(Element.Type.BULLET_POINT, markdown.type(2))
+        assertEquals(1, markdown.parent(2))
+        assertEquals("bullet `one`", text.substring(markdown.start(2), markdown.end(2)))
+        assertEquals(Element.Type.TEXT, markdown.type(3))
+        assertEquals(2, markdown.parent(3))
+        assertEquals("bullet ", text.substring(markdown.start(3), markdown.end(3)))
+        assertEquals(Element.Type.CODE_BLOCK, markdown.type(4))
+        assertEquals(2, markdown.parent(4))
+        assertEquals("one", text.substring(markdown.start(4), markdown.end(4)))
+    }
+
+    @Test fun quoteAndCode() {
+        val text = "> Quote$LINE_SEPARATOR`code`"
+
+        val markdown = Parser.parseFlat(text)
+
+        val expected = listOf(
+                Element(Element.Type.QUOTE, "Quote$LINE_SEPARATOR"),
+                Element(Element.Type.CODE_BLOCK, "code"))
+        assertEquals(expected, markdown.toTextMarkdown().elements)
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", " ", "a", "bc", LINE_SEPARATOR, "\r")
+        val random = Random(42)
+        repeat(20000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(24)) {
+                text.append(tokens[random.nextInt(tokens.size)])
+            }
+            val string = text.toString()
+            assertEquals("Elements of \"$string\"",
+                    Parser.parse(string), Parser.parseFlat(string).toTextMarkdown())
+        }
+    }
+}
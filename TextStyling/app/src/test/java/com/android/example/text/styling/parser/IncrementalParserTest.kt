@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for parsing a text after an edit with [Parser]
+ */
+class IncrementalParserTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    private fun assertEditParsed(text: String, edit: TextEdit,
+                                 previous: TextMarkdown = Parser.parse(text)): TextMarkdown {
+        val edited = edit.applyTo(text)
+
+        val markdown = Parser.parse(edited, previous, edit)
+
+        assertEquals("Elements of \"$text\" after $edit", Parser.parse(edited), markdown)
+        return markdown
+    }
+
+    @Test fun editInsideBulletPoint() {
+        val text = "Points:$LINE_SEPARATOR* one$LINE_SEPARATOR* two$LINE_SEPARATOR* three"
+        val previous = Parser.parse(text)
+        val edit = TextEdit(text.indexOf("two"), 3, "`2`")
+
+        val elements = assertEditParsed(text, edit, previous).elements
+
+        assertEquals(4, elements.size)
+        assertSame(previous.elements[0], elements[0])
+        assertSame(previous.elements[1], elements[1])
+        assertNotSame(previous.elements[2], elements[2])
+        assertSame(previous.elements[3], elements[3])
+    }
+
+    @Test fun editInsideQuote() {
+        val text = "> one$LINE_SEPARATOR> two$LINE_SEPARATOR> three"
+        val previous = Parser.parse(text)
+        val edit = TextEdit(text.indexOf("two"), 0, "number ")
+
+        val elements = assertEditParsed(text, edit, previous).elements
+
+        assertSame(previous.elements[0], elements[0])
+        assertEquals(Element(Element.Type.QUOTE, "number two$LINE_SEPARATOR"), elements[1])
+        assertSame(previous.elements[2], elements[2])
+    }
+
+    @Test fun editChangingPreviousElements() {
+        // closing the code block changes everything after the opening "`"
+        assertEditParsed("`one$LINE_SEPARATOR* two$LINE_SEPARATOR* three",
+                TextEdit(4, 0, "`"))
+        // a code block makes the text before it a bullet point
+        assertEditParsed("`one`* two$LINE_SEPARATOR* three", TextEdit(9, 0, " `four`"))
+        // removing a quote merges the paragraphs around it
+        assertEditParsed("`one$LINE_SEPARATOR> two$LINE_SEPARATOR`three`",
+                TextEdit(4 + LINE_SEPARATOR.length, 2, ""))
+    }
+
+    @Test fun editAtTheEnds() {
+        assertEditParsed("", TextEdit(0, 0, "* one"))
+        assertEditParsed("* one", TextEdit(0, 5, ""))
+        assertEditParsed("* one$LINE_SEPARATOR", TextEdit(5 + LINE_SEPARATOR.length, 0, "* two"))
+        assertEditParsed("* one$LINE_SEPARATOR", TextEdit(0, 0, "> zero$LINE_SEPARATOR"))
+    }
+
+    @Test fun randomEdits() {
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", " ", "a", "bc", LINE_SEPARATOR, "\r")
+        val random = Random(42)
+        fun randomText(maxTokens: Int) = StringBuilder().apply {
+            repeat(random.nextInt(maxTokens)) { append(tokens[random.nextInt(tokens.size)]) }
+        }.toString()
+
+        repeat(20000) {
+            val text = randomText(30)
+            val start = random.nextInt(text.length + 1)
+            val removedLength = random.nextInt(text.length - start + 1)
+            assertEditParsed(text, TextEdit(start, removedLength, randomText(4)))
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for parsing with [MarkdownRules] other than the default ones
+ */
+class MarkdownRulesTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    // the same rules as the default ones, with other marks
+    private val rules = MarkdownRules(listOf(
+            MarkdownRule("| ", MarkdownRule.Kind.QUOTE),
+            MarkdownRule("- ", MarkdownRule.Kind.BULLET_POINT),
+            MarkdownRule("* ", MarkdownRule.Kind.BULLET_POINT),
+            MarkdownRule("~~", MarkdownRule.Kind.CODE_BLOCK)))
+
+    // turns a text written with the default marks into one written with the marks of [rules]
+    private fun translate(text: CharSequence) =
+            text.toString().replace('>', '|').replace('+', '-').replace("`", "~~")
+
+    private fun translate(elements: List<Element>): List<Element> = elements.map {
+        Element(it.type, translate(it.text), translate(it.elements))
+    }
+
+    private fun assertSameElements(text: String) {
+        assertEquals("Elements of \"$text\"",
+                TextMarkdown(translate(Parser.parse(text).elements)),
+                Parser.parse(translate(text), rules))
+    }
+
+    @Test fun otherMarks() {
+        assertSameElements("Text$LINE_SEPARATOR> Quote$LINE_SEPARATOR+ point `code`")
+        assertSameElements("* * nested$LINE_SEPARATOR+ `not closed")
+        assertSameElements("`a`+ * b${LINE_SEPARATOR}c `d`")
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", ">", " ", "a", LINE_SEPARATOR, "\r")
+        val random = Random(42)
+        repeat(20000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(24)) { text.append(tokens[random.nextInt(tokens.size)]) }
+            assertSameElements(text.toString())
+        }
+    }
+
+    @Test fun singleMarksAsWithTheAutomaton() {
+        // marks that are the only ones starting with their character are compared directly
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", ">", "~", "~~", " ", "a", "é")
+        val random = Random(42)
+        for (rules in listOf(MarkdownRules.DEFAULT, this.rules, MarkdownRules(listOf(
+                MarkdownRule("*", MarkdownRule.Kind.CODE_BLOCK),
+                MarkdownRule("* ", MarkdownRule.Kind.BULLET_POINT),
+                MarkdownRule("é ", MarkdownRule.Kind.QUOTE))))) {
+            repeat(2000) {
+                val text = StringBuilder()
+                repeat(1 + random.nextInt(6)) { text.append(tokens[random.nextInt(tokens.size)]) }
+                val kinds = 1 + random.nextInt(7)
+                for (index in 0..text.length) {
+                    assertEquals("Rule at $index of \"$text\"",
+                            rules.matchWithAutomaton(text.toString(), index, kinds),
+                            rules.matchAt(text.toString(), index, kinds))
+                }
+            }
+        }
+    }
+
+    @Test fun longestMarkWins() {
+        val rules = MarkdownRules(listOf(
+                MarkdownRule("*", MarkdownRule.Kind.CODE_BLOCK),
+                MarkdownRule("* ", MarkdownRule.Kind.BULLET_POINT)))
+
+        val elements = Parser.parse("* point *code*", rules).elements
+
+        assertEquals(listOf(Element(Element.Type.BULLET_POINT, "point *code*", listOf(
+                Element(Element.Type.TEXT, "point "),
+                Element(Element.Type.CODE_BLOCK, "code")))), elements)
+    }
+
+    @Test fun blockMarksOnlyAtLineStart() {
+        val elements = Parser.parse("a | b - c", rules).elements
+
+        assertEquals(listOf(Element(Element.Type.TEXT, "a | b - c")), elements)
+    }
+
+    @Test fun editWithOtherMarks() {
+        val text = translate("> one$LINE_SEPARATOR+ two `2`$LINE_SEPARATOR+ three")
+        val edit = TextEdit(text.indexOf("two"), 3, "~~2~~")
+        val edited = edit.applyTo(text)
+
+        assertEquals(Parser.parse(edited, rules),
+                Parser.parse(edited, Parser.parse(text, rules), edit, rules))
+    }
+
+    @Test(expected = IllegalArgumentException::class) fun marksOfAKindHaveTheSameLength() {
+        MarkdownRules(listOf(MarkdownRule("* ", MarkdownRule.Kind.BULLET_POINT),
+                MarkdownRule("-- ", MarkdownRule.Kind.BULLET_POINT)))
+    }
+
+    @Test(expected = IllegalArgumentException::class) fun noLineTerminatorInMarks() {
+        MarkdownRules(listOf(MarkdownRule(">\n", MarkdownRule.Kind.QUOTE)))
+    }
+
+    @Test(expected = IllegalArgumentException::class) fun uniqueMarks() {
+        MarkdownRules(listOf(MarkdownRule("`", MarkdownRule.Kind.CODE_BLOCK),
+                MarkdownRule("`", MarkdownRule.Kind.QUOTE)))
+    }
+}
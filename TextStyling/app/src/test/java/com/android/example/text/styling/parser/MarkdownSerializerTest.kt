@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.Random
+
+/**
+ * Tests for [MarkdownSerializer]
+ */
+class MarkdownSerializerTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    private fun writeAndRead(markdown: TextMarkdown): TextMarkdown {
+        val bytes = ByteArrayOutputStream()
+        MarkdownSerializer.write(markdown, DataOutputStream(bytes))
+        return MarkdownSerializer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())),
+                bytes.size().toLong())
+    }
+
+    @Test fun emptyMarkdown() {
+        assertEquals(TextMarkdown(emptyList()), writeAndRead(TextMarkdown(emptyList())))
+    }
+
+    @Test fun allElementTypes() {
+        val markdown = Parser.parse("Text$LINE_SEPARATOR> Quote$LINE_SEPARATOR" +
+                "* * nested `code`$LINE_SEPARATOR+ point   😀")
+
+        assertEquals(markdown, writeAndRead(markdown))
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", " ", "a", "é", LINE_SEPARATOR)
+        val random = Random(42)
+        repeat(1000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(40)) { text.append(tokens[random.nextInt(tokens.size)]) }
+            val markdown = Parser.parse(text.toString())
+            assertEquals(markdown, writeAndRead(markdown))
+        }
+    }
+
+    @Test(expected = IOException::class) fun otherVersion() {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).writeInt(0)
+        MarkdownSerializer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())))
+    }
+
+    @Test(expected = IOException::class) fun textLongerThanInput() {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).apply {
+            writeInt(1)
+            // a single text element with a corrupt length
+            writeInt(1)
+            writeByte(Element.Type.TEXT.ordinal)
+            writeInt(Int.MAX_VALUE)
+            writeChars("text")
+            writeInt(0)
+        }
+        MarkdownSerializer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())),
+                bytes.size().toLong())
+    }
+
+    @Test(expected = IOException::class) fun moreElementsThanInput() {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).apply {
+            writeInt(1)
+            writeInt(Int.MAX_VALUE)
+        }
+        MarkdownSerializer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())),
+                bytes.size().toLong())
+    }
+}
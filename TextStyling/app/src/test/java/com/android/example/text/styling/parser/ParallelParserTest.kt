@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.Executors
+
+/**
+ * Tests for parsing a text on several threads with [Parser]
+ */
+class ParallelParserTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    private val executor = Executors.newFixedThreadPool(4)
+
+    @After fun shutDown() {
+        executor.shutdown()
+    }
+
+    private fun randomText(random: Random, tokens: List<String>): String {
+        val text = StringBuilder()
+        while (text.length < 2 * Parser.PARALLEL_THRESHOLD) {
+            text.append(tokens[random.nextInt(tokens.size)])
+        }
+        return text.toString()
+    }
+
+    private fun assertSameElements(text: String) {
+        val expected = Parser.parse(text)
+        for (shardCount in listOf(2, 3, 8, 64)) {
+            assertEquals("Elements with $shardCount shards", expected,
+                    Parser.parseParallel(text, executor, shardCount))
+        }
+    }
+
+    @Test fun shortText() {
+        assertSameElements("Styling `Text` in$LINE_SEPARATOR* `Kotlin`")
+    }
+
+    @Test fun paragraphs() {
+        val random = Random(42)
+        val tokens = listOf("* ", "+ ", "> ", "`", " ", "text", LINE_SEPARATOR, LINE_SEPARATOR)
+        repeat(10) {
+            assertSameElements(randomText(random, tokens))
+        }
+    }
+
+    @Test fun shardsStartingInCodeBlocks() {
+        // code blocks spanning many lines make shards start in a different state
+        val random = Random(42)
+        val tokens = listOf("* ", "`", "text ", "text ", "text ", LINE_SEPARATOR)
+        repeat(10) {
+            assertSameElements(randomText(random, tokens))
+        }
+    }
+
+    @Test fun unclosedCodeBlock() {
+        val random = Random(42)
+        val tokens = listOf("* ", "text ", LINE_SEPARATOR)
+        assertSameElements("`" + randomText(random, tokens))
+    }
+
+    @Test fun textWithoutResyncPoints() {
+        // no shard can be joined to the next one, so everything after the first shard is scanned
+        // again on the calling thread
+        val random = Random(42)
+        val tokens = listOf("text ", "text ", "`", LINE_SEPARATOR)
+        assertSameElements(randomText(random, tokens))
+    }
+
+    @Test fun longCodeBlock() {
+        val random = Random(42)
+        val tokens = listOf("* ", "text ", LINE_SEPARATOR)
+        assertSameElements("a`" + randomText(random, tokens) + "`" + LINE_SEPARATOR + "> quote")
+    }
+}
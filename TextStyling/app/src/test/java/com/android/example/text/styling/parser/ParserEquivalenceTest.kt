@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests that all [Parser.Strategy] values produce the same elements.
+ */
+class ParserEquivalenceTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    private fun assertSameElements(text: String) {
+        assertEquals("Elements of \"$text\"",
+                Parser.parse(text, Parser.Strategy.REGEX),
+                Parser.parse(text, Parser.Strategy.SCANNER))
+    }
+
+    @Test fun emptyText() {
+        assertSameElements("")
+    }
+
+    @Test fun quotes() {
+        assertSameElements("> This is a quote.$LINE_SEPARATOR"+"This is not")
+        assertSameElements("This is not a quote.$LINE_SEPARATOR> This is a quote")
+        assertSameElements("> $LINE_SEPARATOR> $LINE_SEPARATOR> ")
+        assertSameElements("Not > a quote$LINE_SEPARATOR>not a quote")
+        assertSameElements("> Quote with `code` and$LINE_SEPARATOR* bullet")
+    }
+
+    @Test fun bulletPoints() {
+        assertSameElements("Bullet points:$LINE_SEPARATOR* One$LINE_SEPARATOR+ Two$LINE_SEPARATOR* Three")
+        assertSameElements("* $LINE_SEPARATOR+ ")
+        assertSameElements("* * + nested$LINE_SEPARATOR* * ")
+        assertSameElements("Not * a bullet point$LINE_SEPARATOR*not one either")
+    }
+
+    @Test fun code() {
+        assertSameElements("Styling `Text` in `Kotlin`")
+        assertSameElements("Styling `Text` in `Kotlin")
+        assertSameElements("``````")
+        assertSameElements("`multi$LINE_SEPARATOR* line$LINE_SEPARATOR` code")
+        assertSameElements("`not closed$LINE_SEPARATOR> quote$LINE_SEPARATOR`closed`")
+    }
+
+    @Test fun bulletPointsWithCode() {
+        assertSameElements("* bullet `one`$LINE_SEPARATOR* bullet `two` is `long`")
+        assertSameElements("* `not closed$LINE_SEPARATOR* `closed`")
+        assertSameElements("* `a`* b `c`")
+        assertSameElements("`a`* b `c`")
+        assertSameElements("`a`+ * b${LINE_SEPARATOR}c `d`")
+        assertSameElements("`a`* b${LINE_SEPARATOR}* c")
+        assertSameElements("`a`* b")
+    }
+
+    @Test fun otherLineTerminators() {
+        assertSameElements("a\r* b\r\n* c\u2028> d\u0085`e` + f")
+        assertSameElements("* a\r> b$LINE_SEPARATOR* c\r* d `e")
+    }
+
+    @Test fun quoteBulletPointsCode() {
+        assertSameElements("Complex:$LINE_SEPARATOR> Quote${LINE_SEPARATOR}With points:" +
+                "$LINE_SEPARATOR+ bullet `one`$LINE_SEPARATOR* bullet `two` is `long`")
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", ">", " ", "a", "bc",
+                LINE_SEPARATOR, "\r", "\u2028")
+        val random = Random(42)
+        repeat(20000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(24)) {
+                text.append(tokens[random.nextInt(tokens.size)])
+            }
+            assertSameElements(text.toString())
+        }
+    }
+}
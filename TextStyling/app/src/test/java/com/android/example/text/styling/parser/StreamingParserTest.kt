@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.Reader
+import java.util.Random
+
+/**
+ * Tests for parsing text from a [Reader] with [Parser]
+ */
+class StreamingParserTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    /**
+     * Reader returning the text in chunks of at most [maxChunk] characters.
+     */
+    private class ChunkedReader(
+            private val text: String,
+            private val maxChunk: Int,
+            private val random: Random = Random(42)
+    ) : Reader() {
+
+        var position = 0
+
+        override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+            if (position == text.length) {
+                return -1
+            }
+            val count = minOf(length, text.length - position, 1 + random.nextInt(maxChunk))
+            text.toCharArray(buffer, offset, position, position + count)
+            position += count
+            return count
+        }
+
+        override fun close() {}
+    }
+
+    @Test fun elementsReportedBeforeTheEnd() {
+        val text = "> Quote$LINE_SEPARATOR* one$LINE_SEPARATOR* two$LINE_SEPARATOR" +
+                "Some text and `code`"
+        val reader = ChunkedReader(text, 1)
+        val elements = mutableListOf<Element>()
+        val positions = mutableListOf<Int>()
+
+        Parser.parse(reader) {
+            elements.add(it)
+            positions.add(reader.position)
+        }
+
+        assertEquals(Parser.parse(text).elements, elements)
+        // every paragraph is reported as soon as it was read
+        assertEquals("> Quote$LINE_SEPARATOR".length, positions[0])
+        assertEquals("> Quote$LINE_SEPARATOR* one$LINE_SEPARATOR".length, positions[1])
+        assertEquals(text.length, positions[3])
+    }
+
+    @Test fun inputStream() {
+        val text = "Text with `code` and ünïcödé$LINE_SEPARATOR> Quote"
+        val elements = mutableListOf<Element>()
+
+        Parser.parse(text.byteInputStream()) { elements.add(it) }
+
+        assertEquals(Parser.parse(text).elements, elements)
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", "*", " ", "a", "bc", LINE_SEPARATOR, "\r")
+        val random = Random(42)
+        repeat(20000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(40)) {
+                text.append(tokens[random.nextInt(tokens.size)])
+            }
+            val string = text.toString()
+            val elements = mutableListOf<Element>()
+
+            Parser.parse(ChunkedReader(string, 8, random)) { elements.add(it) }
+
+            assertEquals("Elements of \"$string\"", Parser.parse(string).elements, elements)
+        }
+    }
+}
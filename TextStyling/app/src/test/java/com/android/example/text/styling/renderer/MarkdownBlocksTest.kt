@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer
+
+import com.android.example.text.styling.parser.Element
+import com.android.example.text.styling.parser.Parser
+import com.android.example.text.styling.parser.TextMarkdown
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for [MarkdownBlocks]
+ */
+class MarkdownBlocksTest {
+
+    private val LINE_SEPARATOR = System.getProperty("line.separator")
+
+    @Test fun emptyMarkdown() {
+        assertEquals(emptyList<TextMarkdown>(),
+                MarkdownBlocks.split(TextMarkdown(emptyList()), LINE_SEPARATOR))
+    }
+
+    @Test fun textIsCutAfterLineSeparators() {
+        val markdown = Parser.parse("a${LINE_SEPARATOR}b${LINE_SEPARATOR}c")
+
+        val blocks = MarkdownBlocks.split(markdown, LINE_SEPARATOR)
+
+        assertEquals(listOf(
+                TextMarkdown(listOf(Element(Element.Type.TEXT, "a$LINE_SEPARATOR"))),
+                TextMarkdown(listOf(Element(Element.Type.TEXT, "b$LINE_SEPARATOR"))),
+                TextMarkdown(listOf(Element(Element.Type.TEXT, "c")))),
+                blocks)
+    }
+
+    @Test fun blocksEndAfterQuotesAndBulletPoints() {
+        val markdown = Parser.parse("> Quote$LINE_SEPARATOR* point$LINE_SEPARATOR" +
+                "text `code`")
+
+        val blocks = MarkdownBlocks.split(markdown, LINE_SEPARATOR)
+
+        assertEquals(3, blocks.size)
+        assertEquals(Element.Type.QUOTE, blocks[0].elements.single().type)
+        assertEquals(Element.Type.BULLET_POINT, blocks[1].elements.single().type)
+        assertEquals(listOf(Element.Type.TEXT, Element.Type.CODE_BLOCK),
+                blocks[2].elements.map { it.type })
+    }
+
+    @Test fun codeBlockIsNotCut() {
+        val markdown = Parser.parse("`a${LINE_SEPARATOR}b`")
+
+        val blocks = MarkdownBlocks.split(markdown, LINE_SEPARATOR)
+
+        assertEquals(markdown, blocks.single())
+    }
+
+    @Test fun randomTexts() {
+        val tokens = listOf("* ", "+ ", "> ", "`", " ", "a", LINE_SEPARATOR)
+        val random = Random(42)
+        repeat(1000) {
+            val text = StringBuilder()
+            repeat(random.nextInt(60)) { text.append(tokens[random.nextInt(tokens.size)]) }
+            val markdown = Parser.parse(text.toString())
+
+            val blocks = MarkdownBlocks.split(markdown, LINE_SEPARATOR)
+
+            // the blocks hold the same text and the same marked elements as the markdown
+            assertEquals(markdown.elements.joinToString("") { it.text },
+                    blocks.joinToString("") { block -> block.elements.joinToString("") { it.text } })
+            assertEquals(markdown.elements.filter { it.type != Element.Type.TEXT },
+                    blocks.flatMap { block -> block.elements.filter { it.type != Element.Type.TEXT } })
+            blocks.dropLast(1).forEach {
+                assertTrue(it.elements.last().text.endsWith(LINE_SEPARATOR))
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer.spans
+
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Path
+import android.graphics.RectF
+import android.text.Layout
+import android.text.SpannableString
+import android.text.Spanned
+import android.text.StaticLayout
+import android.text.TextPaint
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+private const val FRAMES = 1000
+
+/**
+ * Draws a [BulletPointSpan] many times, like a list that keeps being redrawn, and checks that
+ * every frame draws the same bullet path, which doesn't grow from one frame to the next.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class BulletPointSpanDrawTest {
+
+    // the bullet is drawn with a path on hardware accelerated canvases
+    private val canvas = object : Canvas() {
+        val paths = mutableListOf<Path>()
+        val bounds = mutableListOf<RectF>()
+
+        override fun isHardwareAccelerated() = true
+
+        override fun drawPath(path: Path, paint: Paint) {
+            paths.add(path)
+            bounds.add(RectF().also { path.computeBounds(it, true) })
+        }
+    }
+    private val paint = TextPaint().apply {
+        color = Color.BLACK
+        style = Paint.Style.FILL
+    }
+    private val text = SpannableString("point\nnext line")
+    private val span = BulletPointSpan(20, Color.RED)
+    private val layout = StaticLayout(text, paint, 400, Layout.Alignment.ALIGN_NORMAL, 1f, 0f,
+            false)
+
+    @Test
+    fun sameBulletEveryFrame() {
+        text.setSpan(span, 0, text.length, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
+
+        repeat(FRAMES) {
+            // every frame draws the line with the bullet, and a line without one
+            span.drawLeadingMargin(canvas, paint, 0, 1, 0, 30, 40, text, 0, 6, true, layout)
+            span.drawLeadingMargin(canvas, paint, 0, 1, 40, 70, 80, text, 6, text.length, false,
+                    layout)
+        }
+
+        assertEquals(FRAMES, canvas.paths.size)
+        assertEquals(1, canvas.paths.distinct().size)
+        val radius = 1.2f * BulletPointSpan.DEFAULT_BULLET_RADIUS
+        val expected = RectF(-radius, -radius, radius, radius)
+        canvas.bounds.forEachIndexed { frame, bounds ->
+            assertEquals("Bullet bounds of frame $frame", expected, bounds)
+        }
+        // the paint is left as it was found
+        assertEquals(Color.BLACK, paint.color)
+        assertEquals(Paint.Style.FILL, paint.style)
+    }
+}
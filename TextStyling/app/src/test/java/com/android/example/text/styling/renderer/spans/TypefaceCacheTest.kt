@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.renderer.spans
+
+import android.graphics.Color
+import android.graphics.Typeface
+import android.text.TextPaint
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for [TypefaceCache]
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class TypefaceCacheTest {
+
+    @Test
+    fun sameTypefaceForSameFamilyAndStyle() {
+        val first = TypefaceCache.create(Typeface.MONOSPACE, Typeface.BOLD)
+        val second = TypefaceCache.create(Typeface.MONOSPACE, Typeface.BOLD)
+
+        assertSame(first, second)
+        assertEquals(Typeface.BOLD, first.style)
+    }
+
+    @Test
+    fun defaultFamily() {
+        val typeface = TypefaceCache.create(null, Typeface.ITALIC)
+
+        assertSame(typeface, TypefaceCache.create(null, Typeface.ITALIC))
+        assertEquals(Typeface.ITALIC, typeface.style)
+    }
+
+    @Test
+    fun scrollingCodeBlocksAvoidsCreates() {
+        // a long document with many code blocks, some of them in bold or italic text
+        val spans = List(200) { CodeBlockSpan(Typeface.SERIF, Color.LTGRAY) }
+        val styles = List(spans.size) { Typeface.defaultFromStyle(it % 3) }
+        val paint = TextPaint()
+        val createsBefore = TypefaceCache.creates
+        val avoidedBefore = TypefaceCache.avoidedCreates
+
+        // every frame of the scroll measures and draws every span again
+        val frames = 100
+        repeat(frames) {
+            spans.forEachIndexed { index, span ->
+                paint.typeface = styles[index]
+                span.updateMeasureState(paint)
+                paint.typeface = styles[index]
+                span.updateDrawState(paint)
+            }
+        }
+
+        val calls = frames * spans.size * 2L
+        val creates = TypefaceCache.creates - createsBefore
+        val avoided = TypefaceCache.avoidedCreates - avoidedBefore
+        // at most one create per style, the other tests may have created some already
+        assertEquals(calls, creates + avoided)
+        assertTrue("$creates creates", creates <= 3)
+    }
+}
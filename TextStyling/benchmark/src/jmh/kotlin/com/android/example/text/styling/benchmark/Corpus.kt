@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.benchmark
+
+import java.util.Random
+
+/**
+ * Generated texts used by the benchmarks. Every text is about [SIZE] characters long and is
+ * always generated the same way, so results can be compared between runs.
+ */
+enum class Corpus {
+
+    /**
+     * Paragraphs of text, quotes, bullet points and code, like the text of the app.
+     */
+    MIXED {
+        override fun appendParagraph(text: StringBuilder, random: Random) {
+            when (random.nextInt(4)) {
+                0 -> text.append("> ")
+                1 -> text.append(if (random.nextBoolean()) "* " else "+ ")
+            }
+            appendWords(text, random, 5 + random.nextInt(20), codeBlocks = true)
+        }
+    },
+
+    /**
+     * Quotes only.
+     */
+    QUOTES {
+        override fun appendParagraph(text: StringBuilder, random: Random) {
+            text.append("> ")
+            appendWords(text, random, 5 + random.nextInt(20), codeBlocks = false)
+        }
+    },
+
+    /**
+     * Bullet points nested in up to 32 other bullet points.
+     */
+    NESTED_BULLET_POINTS {
+        override fun appendParagraph(text: StringBuilder, random: Random) {
+            repeat(1 + random.nextInt(32)) { text.append("* ") }
+            appendWords(text, random, 3 + random.nextInt(5), codeBlocks = true)
+        }
+    },
+
+    /**
+     * Code blocks spanning many lines.
+     */
+    LONG_CODE_BLOCKS {
+        override fun appendParagraph(text: StringBuilder, random: Random) {
+            text.append('`')
+            repeat(1 + random.nextInt(20)) {
+                appendWords(text, random, 5 + random.nextInt(10), codeBlocks = false)
+            }
+            text.append('`')
+        }
+    },
+
+    /**
+     * Bullet points with a "`" that is never closed, so the rest of every bullet point has to
+     * be searched for the end of the code block.
+     */
+    UNMATCHED_CODE_BLOCKS {
+        override fun appendParagraph(text: StringBuilder, random: Random) {
+            text.append("* `")
+            appendWords(text, random, 5 + random.nextInt(20), codeBlocks = false)
+        }
+    };
+
+    val text: String by lazy {
+        val random = Random(SEED)
+        val text = StringBuilder(SIZE + 1024)
+        while (text.length < SIZE) {
+            appendParagraph(text, random)
+        }
+        text.toString()
+    }
+
+    protected abstract fun appendParagraph(text: StringBuilder, random: Random)
+
+    protected fun appendWords(text: StringBuilder, random: Random, count: Int,
+                              codeBlocks: Boolean) {
+        repeat(count) {
+            if (codeBlocks && random.nextInt(8) == 0) {
+                text.append('`').append(WORDS[random.nextInt(WORDS.size)]).append("` ")
+            } else {
+                text.append(WORDS[random.nextInt(WORDS.size)]).append(' ')
+            }
+        }
+        text.append(LINE_SEPARATOR)
+    }
+
+    companion object {
+        const val SIZE = 256 * 1024
+        private const val SEED = 42L
+        private val WORDS = listOf("Lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+                "adipiscing", "elit", "sed", "do", "eiusmod", "tempor")
+        private val LINE_SEPARATOR = System.getProperty("line.separator")
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.benchmark
+
+import com.android.example.text.styling.parser.FlatMarkdown
+import com.android.example.text.styling.parser.Parser
+import com.android.example.text.styling.parser.TextMarkdown
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.io.StringReader
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Benchmarks for [Parser].
+ */
+@State(Scope.Benchmark)
+open class ParserBenchmark {
+
+    @Param
+    lateinit var corpus: Corpus
+
+    @Param
+    lateinit var strategy: Parser.Strategy
+
+    private lateinit var text: String
+
+    @Setup fun setUp() {
+        text = corpus.text
+    }
+
+    @Benchmark fun parse(): TextMarkdown = Parser.parse(text, strategy)
+}
+
+/**
+ * Benchmarks for [Parser.parseFlat].
+ */
+@State(Scope.Benchmark)
+open class FlatParserBenchmark {
+
+    @Param
+    lateinit var corpus: Corpus
+
+    private lateinit var text: String
+
+    @Setup fun setUp() {
+        text = corpus.text
+    }
+
+    @Benchmark fun parseFlat(): FlatMarkdown = Parser.parseFlat(text)
+}
+
+/**
+ * Benchmarks for [Parser.parseParallel].
+ */
+@State(Scope.Benchmark)
+open class ParallelParserBenchmark {
+
+    @Param
+    lateinit var corpus: Corpus
+
+    @Param("2", "4")
+    var shardCount = 0
+
+    private lateinit var text: String
+
+    private lateinit var executor: ExecutorService
+
+    @Setup fun setUp() {
+        text = corpus.text
+        executor = Executors.newFixedThreadPool(shardCount)
+    }
+
+    @TearDown fun tearDown() {
+        executor.shutdown()
+    }
+
+    @Benchmark fun parseParallel(): TextMarkdown = Parser.parseParallel(text, executor, shardCount)
+}
+
+/**
+ * Benchmarks for [Parser.parse] with a [java.io.Reader].
+ */
+@State(Scope.Benchmark)
+open class StreamingParserBenchmark {
+
+    @Param
+    lateinit var corpus: Corpus
+
+    private lateinit var text: String
+
+    @Setup fun setUp() {
+        text = corpus.text
+    }
+
+    @Benchmark fun parseStreaming(): Int {
+        var count = 0
+        Parser.parse(StringReader(text)) { count++ }
+        return count
+    }
+}
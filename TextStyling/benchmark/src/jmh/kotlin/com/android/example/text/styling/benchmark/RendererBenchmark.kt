@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.benchmark
+
+import com.android.example.text.styling.parser.FlatMarkdown
+import com.android.example.text.styling.parser.Parser
+import com.android.example.text.styling.parser.TextMarkdown
+import com.android.example.text.styling.renderer.MarkdownSpanRenderer
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * Benchmarks for [MarkdownSpanRenderer], which walks the parsed elements and sets their spans
+ * for `MarkdownBuilder`, here with stand-in spans.
+ */
+@State(Scope.Benchmark)
+open class RendererBenchmark {
+
+    @Param
+    lateinit var corpus: Corpus
+
+    private val renderer = MarkdownSpanRenderer(StubSpanFactory())
+    private lateinit var markdown: TextMarkdown
+    private lateinit var flatMarkdown: FlatMarkdown
+
+    @Setup fun setUp() {
+        markdown = Parser.parse(corpus.text)
+        flatMarkdown = Parser.parseFlat(corpus.text)
+    }
+
+    @Benchmark fun elements(): StubSpannableBuilder =
+            StubSpannableBuilder().also { renderer.render(markdown, it) }
+
+    @Benchmark fun flatElements(): StubSpannableBuilder =
+            StubSpannableBuilder().also { renderer.render(flatMarkdown, it) }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.example.text.styling.benchmark
+
+import com.android.example.text.styling.renderer.SpanFactory
+import com.android.example.text.styling.renderer.SpanTarget
+
+/**
+ * Stand-in for the span classes used by `MarkdownBuilder`, so span construction can run on the
+ * JVM. Like the framework spans, every instance holds the parameters it was created with.
+ */
+class StubSpan(val type: String, val parameter: Any?)
+
+/**
+ * Creates [StubSpan]s with the same parameters as the spans of `MarkdownBuilder`.
+ */
+class StubSpanFactory : SpanFactory {
+
+    override fun createCodeBlockSpan(): Any = StubSpan("CodeBlockSpan", CODE_BACKGROUND_COLOR)
+
+    override fun createQuoteSpans() = arrayOf<Any>(StubSpan("StyleSpan", ITALIC),
+            StubSpan("LeadingMarginSpan.Standard", 40),
+            StubSpan("RelativeSizeSpan", 1.1f))
+
+    override fun createBulletPointSpan(): Any = StubSpan("BulletPointSpan", BULLET_POINT_COLOR)
+
+    private companion object {
+        const val ITALIC = 2
+        const val CODE_BACKGROUND_COLOR = 0xFFDDDDDD.toInt()
+        const val BULLET_POINT_COLOR = 0xFF3F51B5.toInt()
+    }
+}
+
+/**
+ * Stand-in for [android.text.SpannableStringBuilder]: appends text and keeps every span with
+ * its start and end.
+ */
+class StubSpannableBuilder : SpanTarget {
+
+    val text = StringBuilder()
+    var spanCount = 0
+        private set
+    private var spans = arrayOfNulls<Any>(16)
+    private var starts = IntArray(16)
+    private var ends = IntArray(16)
+
+    override val length: Int
+        get() = text.length
+
+    override fun append(text: CharSequence, start: Int, end: Int) {
+        this.text.append(text, start, end)
+    }
+
+    override fun setSpan(span: Any, start: Int, end: Int) {
+        if (spanCount == spans.size) {
+            spans = spans.copyOf(spanCount * 2)
+            starts = starts.copyOf(spanCount * 2)
+            ends = ends.copyOf(spanCount * 2)
+        }
+        spans[spanCount] = span
+        starts[spanCount] = start
+        ends[spanCount] = end
+        spanCount++
+    }
+}